@@ -0,0 +1,47 @@
+package ca.dait.opengolf;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark fixtures, loaded from the course documents in es_bootstrap_json.
+ */
+public final class Fixtures {
+    private Fixtures(){}
+
+    private static final String COURSES_DIR_PROPERTY = "opengolf.fixtures.courses";
+    private static final String COURSES_DIR_DEFAULT = "es_bootstrap_json/courses";
+
+    /**
+     * Raw course documents, as stored in the course index.
+     *
+     * @return
+     */
+    public static List<byte[]> courses(){
+        Path dir = Paths.get(System.getProperty(COURSES_DIR_PROPERTY, COURSES_DIR_DEFAULT));
+        try(Stream<Path> files = Files.list(dir)){
+            return files.filter((file) -> file.toString().endsWith(".json"))
+                        .sorted()
+                        .map(Fixtures::read)
+                        .collect(Collectors.toList());
+        }
+        catch(IOException e){
+            throw new UncheckedIOException("Unable to list course fixtures in " + dir.toAbsolutePath(), e);
+        }
+    }
+
+    private static byte[] read(Path file){
+        try{
+            return Files.readAllBytes(file);
+        }
+        catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ca.dait.opengolf.auth;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * UserCredentials construction, done for every verified ID token.
+ */
+@State(Scope.Benchmark)
+public class UserCredentialsBenchmark {
+
+    private final String[] groups = new String[]{"contributor", "admin"};
+
+    @Benchmark
+    public UserCredentials create(){
+        return new UserCredentials(true, "benchmark", this.groups);
+    }
+}
@@ -0,0 +1,61 @@
+package ca.dait.opengolf.awslabs;
+
+import com.amazonaws.auth.AWS4Signer;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpEntityEnclosingRequest;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * SigV4 signing of an Elasticsearch request, from a small search body up to a bulk sized body. Run with the gc
+ * profiler for allocation per request.
+ */
+@State(Scope.Benchmark)
+public class SigningInterceptorBenchmark {
+
+    @Param({"512", "1048576"})
+    public int bodySize;
+
+    private AWSRequestSigningApacheInterceptor interceptor;
+    private HttpContext context;
+    private byte[] body;
+
+    @Setup
+    public void setup(){
+        AWS4Signer signer = new AWS4Signer();
+        signer.setServiceName("es");
+        signer.setRegionName("us-east-1");
+        this.interceptor = new AWSRequestSigningApacheInterceptor("es", signer,
+                new AWSStaticCredentialsProvider(new BasicAWSCredentials("AKIDEXAMPLE", "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY")),
+                60);
+
+        this.context = new BasicHttpContext();
+        this.context.setAttribute(HttpCoreContext.HTTP_TARGET_HOST, new HttpHost("search.example.com", 443, "https"));
+
+        this.body = new byte[this.bodySize];
+        Arrays.fill(this.body, (byte) 'a');
+    }
+
+    @Benchmark
+    public HttpRequest process() throws HttpException, IOException{
+        BasicHttpEntityEnclosingRequest request = new BasicHttpEntityEnclosingRequest("POST", "/course/course/_search?typed_keys=true");
+        request.setEntity(new ByteArrayEntity(this.body, ContentType.APPLICATION_JSON));
+        this.interceptor.process(request, this.context);
+        return request;
+    }
+}
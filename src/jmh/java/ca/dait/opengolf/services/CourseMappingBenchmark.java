@@ -0,0 +1,113 @@
+package ca.dait.opengolf.services;
+
+import ca.dait.opengolf.Fixtures;
+import ca.dait.opengolf.entities.course.Course;
+import ca.dait.opengolf.entities.course.CourseSearchResult;
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Search hit mapping: Gson binding of each hit to a Course against the raw source passthrough of CourseHit and
+ * CourseJson. Each invocation maps every course fixture, ie: one search response.
+ *
+ * The holes benchmarks compare reflective binding of the holes array to one object per hole against the streaming
+ * HoleGeometry reader.
+ */
+@State(Scope.Benchmark)
+public class CourseMappingBenchmark {
+
+    private static final double LAT = 44.3255;
+    private static final double LON = -79.6506;
+
+    private static final Type HOLES_TYPE = new TypeToken<List<Hole>>(){}.getType();
+
+    private final Gson gson = new Gson();
+
+    private List<String> ids;
+    private List<byte[]> sources;
+    private List<String> holes;
+    private CourseSearchPage page;
+
+    @Setup
+    public void setup(){
+        this.sources = Fixtures.courses();
+        this.ids = new ArrayList<>();
+        List<CourseHit> hits = new ArrayList<>();
+        for(int i = 0; i < this.sources.size(); i++){
+            this.ids.add(Integer.toString(i));
+            hits.add(CourseHit.of(this.ids.get(i), this.sources.get(i)));
+        }
+        this.page = new CourseSearchPage(hits, null);
+
+        this.holes = new ArrayList<>();
+        for(byte[] source : this.sources){
+            this.holes.add(new JsonParser().parse(new String(source, StandardCharsets.UTF_8))
+                                            .getAsJsonObject().get("holes").toString());
+        }
+    }
+
+    @Benchmark
+    public void holesReflection(Blackhole blackhole){
+        for(String json : this.holes){
+            blackhole.consume(this.gson.<List<Hole>>fromJson(json, HOLES_TYPE));
+        }
+    }
+
+    @Benchmark
+    public void holesGeometry(Blackhole blackhole) throws IOException{
+        for(String json : this.holes){
+            blackhole.consume(HoleGeometry.read(new JsonReader(new StringReader(json))));
+        }
+    }
+
+    @Benchmark
+    public void gsonFromJson(Blackhole blackhole){
+        for(byte[] source : this.sources){
+            blackhole.consume(this.gson.fromJson(new String(source, StandardCharsets.UTF_8), Course.class));
+        }
+    }
+
+    @Benchmark
+    public String gsonSearchResult(){
+        Course[] courses = new Course[this.sources.size()];
+        for(int i = 0; i < courses.length; i++){
+            courses[i] = this.gson.fromJson(new String(this.sources.get(i), StandardCharsets.UTF_8), Course.class);
+            courses[i].setRemoteId(this.ids.get(i));
+        }
+        return this.gson.toJson(new CourseSearchResult(courses));
+    }
+
+    @Benchmark
+    public void courseHitOf(Blackhole blackhole){
+        for(int i = 0; i < this.sources.size(); i++){
+            blackhole.consume(CourseHit.of(this.ids.get(i), this.sources.get(i)));
+        }
+    }
+
+    @Benchmark
+    public byte[] courseJsonSearchResult() throws IOException{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CourseJson.searchResult(this.page, LAT, LON, false).writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static class Hole {
+        Double lat;
+        Double lon;
+    }
+}
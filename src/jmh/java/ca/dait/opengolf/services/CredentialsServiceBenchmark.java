@@ -0,0 +1,102 @@
+package ca.dait.opengolf.services;
+
+import ca.dait.opengolf.auth.UserCredentials;
+import com.auth0.jwk.Jwk;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.BaseEncoding;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import javax.servlet.http.Cookie;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ID token verification with a locally generated RS256 key, with and without the verified token cache, and session
+ * cookie extraction.
+ */
+@State(Scope.Benchmark)
+public class CredentialsServiceBenchmark {
+
+    private static final String KEY_ID = "benchmark";
+    private static final String ID_COOKIE_NAME = "s";
+    private static final String REFRESH_COOKIE_NAME = "rt";
+
+    private JwkKeyCache jwkKeyCache;
+    private CredentialsService cached;
+    private CredentialsService uncached;
+    private String token;
+    private MockHttpServletRequest request;
+
+    @Setup
+    public void setup() throws NoSuchAlgorithmException{
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+
+        Jwk jwk = new Jwk(KEY_ID, "RSA", "RS256", "sig", Collections.emptyList(), null, null, null,
+                          ImmutableMap.of("n", base64Url(publicKey.getModulus()),
+                                          "e", base64Url(publicKey.getPublicExponent())));
+
+        this.jwkKeyCache = new JwkKeyCache(() -> Collections.singletonList(jwk), 0, 0);
+        this.cached = new CredentialsService(this.jwkKeyCache, true, 2592000, 1000, 3600, new SimpleMeterRegistry());
+        this.uncached = new CredentialsService(this.jwkKeyCache, true, 2592000, 0, 3600, new SimpleMeterRegistry());
+
+        this.token = JWT.create()
+                        .withKeyId(KEY_ID)
+                        .withClaim("cognito:username", "benchmark")
+                        .withArrayClaim("cognito:groups", new String[]{"contributor"})
+                        .withExpiresAt(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)))
+                        .sign(Algorithm.RSA256(publicKey, (RSAPrivateKey) keyPair.getPrivate()));
+
+        this.request = new MockHttpServletRequest();
+        this.request.setCookies(new Cookie("_ga", "GA1.2.1234567890.1234567890"),
+                                new Cookie("_gid", "GA1.2.0987654321.0987654321"),
+                                new Cookie(ID_COOKIE_NAME, this.token),
+                                new Cookie(REFRESH_COOKIE_NAME, "refresh-token"));
+    }
+
+    @TearDown
+    public void tearDown(){
+        this.jwkKeyCache.close();
+    }
+
+    @Benchmark
+    public UserCredentials verifyIdTokenCached(){
+        return this.cached.verifyIdToken(this.token);
+    }
+
+    @Benchmark
+    public UserCredentials verifyIdTokenUncached(){
+        return this.uncached.verifyIdToken(this.token);
+    }
+
+    @Benchmark
+    public String getCookieValue(){
+        return this.cached.getCookieValue(REFRESH_COOKIE_NAME, this.request);
+    }
+
+    private static String base64Url(BigInteger value){
+        byte[] bytes = value.toByteArray();
+        if(bytes.length > 1 && bytes[0] == 0){
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        return BaseEncoding.base64Url().omitPadding().encode(bytes);
+    }
+}
@@ -0,0 +1,109 @@
+package ca.dait.opengolf.loadtest;
+
+import com.google.gson.GsonBuilder;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency (microsecond resolution, 3 significant digits) and error counts per operation over the measured part of a
+ * run. Requests answered with anything but a 2xx status count as errors and aren't included in the latencies.
+ */
+class LatencyReport {
+
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(5);
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private final Map<Traffic.Operation, Histogram> latencies = new EnumMap<>(Traffic.Operation.class);
+    private final Map<Traffic.Operation, LongAdder> errors = new EnumMap<>(Traffic.Operation.class);
+
+    LatencyReport(){
+        for(Traffic.Operation operation : Traffic.Operation.values()){
+            this.latencies.put(operation, new ConcurrentHistogram(MAX_LATENCY_MICROS, 3));
+            this.errors.put(operation, new LongAdder());
+        }
+    }
+
+    void success(Traffic.Operation operation, long latencyNanos){
+        this.latencies.get(operation).recordValue(Math.min(MAX_LATENCY_MICROS, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+    }
+
+    void error(Traffic.Operation operation){
+        this.errors.get(operation).increment();
+    }
+
+    /**
+     * Prints a table of throughput and latency percentiles per operation.
+     *
+     * @param out
+     * @param seconds Length of the measured part of the run.
+     */
+    void print(PrintStream out, double seconds){
+        out.printf("%-28s %10s %8s %10s %10s %10s %10s %10s%n",
+                   "operation", "requests", "errors", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        for(Map.Entry<String, Map<String, Number>> result : this.results(seconds).entrySet()){
+            Map<String, Number> values = result.getValue();
+            out.printf("%-28s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n", result.getKey(),
+                       values.get("requests"), values.get("errors"), values.get("throughput"),
+                       values.get("p50"), values.get("p95"), values.get("p99"), values.get("max"));
+        }
+    }
+
+    /**
+     * Writes the settings of the run and its results as JSON, for comparison between runs.
+     *
+     * @param file
+     * @param settings
+     * @param seconds
+     * @throws IOException
+     */
+    void write(Path file, Map<String, Object> settings, double seconds) throws IOException{
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("settings", settings);
+        report.put("results", this.results(seconds));
+        if(file.getParent() != null){
+            Files.createDirectories(file.getParent());
+        }
+        Files.write(file, new GsonBuilder().setPrettyPrinting().create().toJson(report).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Map<String, Map<String, Number>> results(double seconds){
+        Histogram total = new Histogram(MAX_LATENCY_MICROS, 3);
+        long totalErrors = 0;
+
+        Map<String, Map<String, Number>> results = new LinkedHashMap<>();
+        for(Traffic.Operation operation : Traffic.Operation.values()){
+            Histogram histogram = this.latencies.get(operation);
+            long errors = this.errors.get(operation).sum();
+            if(histogram.getTotalCount() + errors > 0){
+                results.put(operation.label, summarize(histogram, errors, seconds));
+                total.add(histogram);
+                totalErrors += errors;
+            }
+        }
+        results.put("total", summarize(total, totalErrors, seconds));
+        return results;
+    }
+
+    private static Map<String, Number> summarize(Histogram histogram, long errors, double seconds){
+        Map<String, Number> summary = new LinkedHashMap<>();
+        summary.put("requests", histogram.getTotalCount() + errors);
+        summary.put("errors", errors);
+        summary.put("throughput", (histogram.getTotalCount() + errors) / seconds);
+        summary.put("p50", histogram.getValueAtPercentile(50) / MICROS_PER_MILLI);
+        summary.put("p95", histogram.getValueAtPercentile(95) / MICROS_PER_MILLI);
+        summary.put("p99", histogram.getValueAtPercentile(99) / MICROS_PER_MILLI);
+        summary.put("max", histogram.getMaxValue() / MICROS_PER_MILLI);
+        return summary;
+    }
+}
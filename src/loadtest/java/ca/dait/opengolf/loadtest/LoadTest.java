@@ -0,0 +1,194 @@
+package ca.dait.opengolf.loadtest;
+
+import ca.dait.opengolf.OpenGolfApplication;
+import com.google.common.base.Strings;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a mix of REST API traffic and reports throughput and p50/p95/p99 latency per operation.
+ *
+ * Unless a target is given the server is started in this JVM against local stand-ins: the embedded course repository
+ * (see EmbeddedCourseRepository) loaded with the bootstrap courses, and a locally published JSON web key set that
+ * signs the contributor tokens sent with writes. Cognito isn't called, writes authenticate with the minted token.
+ *
+ * Options, as system properties (gradle loadTest -Dopengolf.loadtest.duration=120):
+ *  opengolf.loadtest.target        Base URL of a running server, empty to start one. It must trust the key set
+ *                                  published on jwksPort, ie: ENV_JWK_URL=http://localhost:8099/.well-known/jwks.json
+ *  opengolf.loadtest.jwksPort      Port of the local key set, 0 for any free port. (0)
+ *  opengolf.loadtest.courses       Courses loaded by the started server. (es_bootstrap_json/courses)
+ *  opengolf.loadtest.mix           Relative weight of each operation.
+ *                                  (search=20,searchTerm=25,searchLocated=25,searchTermLocated=10,get=15,update=5)
+ *  opengolf.loadtest.concurrency   Concurrent clients. (32)
+ *  opengolf.loadtest.rate          Total requests per second, 0 for each client to send as fast as it's answered.
+ *                                  With a rate, latency is measured from when a request was due rather than sent, so
+ *                                  a stalled server isn't hidden by clients waiting on it. (0)
+ *  opengolf.loadtest.warmup        Seconds of traffic before measuring. (10)
+ *  opengolf.loadtest.duration      Seconds of measured traffic. (60)
+ *  opengolf.loadtest.seed          Seed of the request parameters, runs with the same seed replay the same requests.
+ *  opengolf.loadtest.report        JSON report file. (build/reports/loadtest/results.json)
+ */
+public class LoadTest {
+
+    private static final String PROPERTY_PREFIX = "opengolf.loadtest.";
+    private static final String DEFAULT_MIX = "search=20,searchTerm=25,searchLocated=25,searchTermLocated=10,get=15,update=5";
+
+    private static final String TOKEN_USERNAME = "loadtest";
+    private static final String[] TOKEN_GROUPS = new String[]{"contributor"};
+
+    public static void main(String[] args) throws Exception {
+        String target = option("target", "");
+        int jwksPort = Integer.parseInt(option("jwksPort", "0"));
+        String courses = option("courses", "es_bootstrap_json/courses");
+        String mix = option("mix", DEFAULT_MIX);
+        int concurrency = Integer.parseInt(option("concurrency", "32"));
+        double rate = Double.parseDouble(option("rate", "0"));
+        long warmup = Long.parseLong(option("warmup", "10"));
+        long duration = Long.parseLong(option("duration", "60"));
+        long seed = Long.parseLong(option("seed", String.valueOf(System.currentTimeMillis())));
+        String report = option("report", "build/reports/loadtest/results.json");
+
+        try(LocalJwks jwks = new LocalJwks(jwksPort)){
+            ConfigurableApplicationContext server = null;
+            if(Strings.isNullOrEmpty(target)){
+                server = start(courses, jwks.url());
+                target = "http://localhost:" + ((ServletWebServerApplicationContext) server).getWebServer().getPort();
+            }
+            else{
+                System.out.println("Contributor tokens are signed by the key set at " + jwks.url());
+            }
+
+            try(CloseableHttpClient client = HttpClients.custom()
+                                                        .setMaxConnTotal(concurrency)
+                                                        .setMaxConnPerRoute(concurrency)
+                                                        .disableCookieManagement()
+                                                        .build()){
+
+                String token = jwks.mint(TOKEN_USERNAME, TOKEN_GROUPS,
+                                         new Date(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(warmup + duration) +
+                                                  TimeUnit.HOURS.toMillis(1)));
+                Traffic traffic = new Traffic(target, token, mix);
+                traffic.discover(client);
+
+                LatencyReport latencies = new LatencyReport();
+                System.out.println("Running " + concurrency + " clients against " + target + " for " + warmup +
+                                   "s warmup + " + duration + "s, mix: " + mix);
+                run(client, traffic, latencies, concurrency, rate, warmup, duration, seed);
+
+                latencies.print(System.out, duration);
+                Map<String, Object> settings = new LinkedHashMap<>();
+                settings.put("target", target);
+                settings.put("mix", mix);
+                settings.put("concurrency", concurrency);
+                settings.put("rate", rate);
+                settings.put("warmup", warmup);
+                settings.put("duration", duration);
+                settings.put("seed", seed);
+                latencies.write(Paths.get(report), settings, duration);
+                System.out.println("Report written to " + Paths.get(report).toAbsolutePath());
+            }
+            finally{
+                if(server != null){
+                    server.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the clients until the warmup and measured duration have passed. Each client has its own random source,
+     * seeded from the run's seed.
+     */
+    private static void run(CloseableHttpClient client, Traffic traffic, LatencyReport latencies, int concurrency,
+                            double rate, long warmup, long duration, long seed) throws Exception {
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmup);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(duration);
+        long interval = (rate > 0) ? (long) (TimeUnit.SECONDS.toNanos(1) * concurrency / rate) : 0;
+
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        try{
+            List<Future<?>> running = new ArrayList<>();
+            for(int i = 0; i < concurrency; i++){
+                Random random = new Random(seed + i);
+                //Spread the first request of each client over one interval, rather than all at once.
+                long first = start + ((interval > 0) ? interval * i / concurrency : 0);
+                running.add(clients.submit(() -> {
+                    long due = first;
+                    while(due < end){
+                        if(interval > 0){
+                            LockSupport.parkNanos(due - System.nanoTime());
+                        }
+                        else{
+                            due = System.nanoTime();
+                        }
+                        Traffic.Operation operation = traffic.next(random);
+                        boolean success;
+                        try(CloseableHttpResponse response = client.execute(traffic.request(operation, random))){
+                            EntityUtils.consume(response.getEntity());
+                            success = response.getStatusLine().getStatusCode() / 100 == 2;
+                        }
+                        catch(IOException e){
+                            success = false;
+                        }
+                        long latency = System.nanoTime() - due;
+                        if(due >= measureFrom){
+                            if(success){
+                                latencies.success(operation, latency);
+                            }
+                            else{
+                                latencies.error(operation);
+                            }
+                        }
+                        due += interval;
+                    }
+                    return null;
+                }));
+            }
+            for(Future<?> future : running){
+                future.get();
+            }
+        }
+        finally{
+            clients.shutdownNow();
+        }
+    }
+
+    private static ConfigurableApplicationContext start(String courses, String jwkUrl){
+        //The Cognito client needs a region to be built, it's never called.
+        if(System.getenv("AWS_REGION") == null && System.getProperty("aws.region") == null){
+            System.setProperty("aws.region", "us-east-1");
+        }
+        return new SpringApplicationBuilder(OpenGolfApplication.class)
+                    .properties("server.port=0",
+                                "ENV_COURSE_REPOSITORY=embedded",
+                                "ENV_EMBEDDED_COURSES=" + courses,
+                                "ENV_JWK_URL=" + jwkUrl,
+                                "ENV_USERPOOL_ID=loadtest",
+                                "ENV_USERPOOL_CLIENT_ID=loadtest")
+                    .run();
+    }
+
+    private static String option(String name, String defaultValue){
+        return System.getProperty(PROPERTY_PREFIX + name, defaultValue);
+    }
+}
@@ -0,0 +1,109 @@
+package ca.dait.opengolf.loadtest;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.BaseEncoding;
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Stand-in for the Cognito user pool's token signing: a locally generated RS256 key, published as a JSON web key set
+ * over HTTP for the server's ENV_JWK_URL, and used to mint ID tokens.
+ */
+class LocalJwks implements AutoCloseable {
+
+    private static final String PATH = "/.well-known/jwks.json";
+    private static final String KEY_ID = "opengolf-loadtest";
+
+    private static final String COGNITO_USERNAME = "cognito:username";
+    private static final String COGNITO_GROUPS = "cognito:groups";
+
+    private final KeyPair keyPair;
+    private final HttpServer server;
+
+    /**
+     * @param port Port to publish the key set on, 0 for any free port.
+     * @throws IOException
+     */
+    LocalJwks(int port) throws IOException{
+        try{
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            this.keyPair = generator.generateKeyPair();
+        }
+        catch(NoSuchAlgorithmException e){
+            throw new IllegalStateException(e);
+        }
+
+        RSAPublicKey publicKey = (RSAPublicKey) this.keyPair.getPublic();
+        byte[] keySet = new Gson().toJson(ImmutableMap.of("keys", ImmutableList.of(
+                ImmutableMap.builder()
+                            .put("kid", KEY_ID)
+                            .put("kty", "RSA")
+                            .put("alg", "RS256")
+                            .put("use", "sig")
+                            .put("n", base64Url(publicKey.getModulus()))
+                            .put("e", base64Url(publicKey.getPublicExponent()))
+                            .build()))).getBytes(StandardCharsets.UTF_8);
+
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        this.server.createContext(PATH, (exchange) -> {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, keySet.length);
+            try(OutputStream out = exchange.getResponseBody()){
+                out.write(keySet);
+            }
+        });
+        this.server.start();
+    }
+
+    String url(){
+        return "http://localhost:" + this.server.getAddress().getPort() + PATH;
+    }
+
+    /**
+     * Mints an ID token as issued by Cognito.
+     *
+     * @param username
+     * @param groups
+     * @param expiresAt
+     * @return
+     */
+    String mint(String username, String[] groups, Date expiresAt){
+        return JWT.create()
+                  .withKeyId(KEY_ID)
+                  .withClaim(COGNITO_USERNAME, username)
+                  .withArrayClaim(COGNITO_GROUPS, groups)
+                  .withExpiresAt(expiresAt)
+                  .sign(Algorithm.RSA256((RSAPublicKey) this.keyPair.getPublic(),
+                                         (RSAPrivateKey) this.keyPair.getPrivate()));
+    }
+
+    @Override
+    public void close(){
+        this.server.stop(0);
+    }
+
+    private static String base64Url(BigInteger value){
+        byte[] bytes = value.toByteArray();
+        if(bytes.length > 1 && bytes[0] == 0){
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        return BaseEncoding.base64Url().omitPadding().encode(bytes);
+    }
+}
@@ -0,0 +1,216 @@
+package ca.dait.opengolf.loadtest;
+
+import com.google.common.base.Splitter;
+import com.google.common.net.HttpHeaders;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The mix of requests replayed by the load generator. Request parameters are drawn from the courses the server holds,
+ * read through the search API before the run: search terms from course names (a quarter of them with a typo, to
+ * exercise the fuzzy match), co-ordinates near their holes and course IDs.
+ */
+class Traffic {
+
+    private static final String SEARCH_PATH = "/api/course/search";
+    private static final String COURSE_PATH = "/api/course/";
+    private static final String ID_COOKIE_NAME = "s";
+
+    private static final int DISCOVERY_PAGE_SIZE = 50;
+    private static final int MIN_TERM_LENGTH = 3;
+    private static final double LOCATION_JITTER = 0.02;
+
+    enum Operation {
+        SEARCH("search"),
+        SEARCH_TERM("search?searchTerm"),
+        SEARCH_LOCATED("search?lat&lon"),
+        SEARCH_TERM_LOCATED("search?searchTerm&lat&lon"),
+        GET("get"),
+        UPDATE("update");
+
+        final String label;
+
+        Operation(String label){
+            this.label = label;
+        }
+    }
+
+    private final String baseUrl;
+    private final String idToken;
+
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+
+    private final List<String> ids = new ArrayList<>();
+    private final List<String> documents = new ArrayList<>();
+    private final List<String> terms = new ArrayList<>();
+    private final List<double[]> holes = new ArrayList<>();
+
+    /**
+     * @param baseUrl
+     * @param idToken Contributor ID token sent with writes.
+     * @param mix Relative weight of each operation, ie: search=20,get=10,update=1
+     */
+    Traffic(String baseUrl, String idToken, String mix){
+        this.baseUrl = baseUrl;
+        this.idToken = idToken;
+
+        Map<String, String> weights = Splitter.on(',').trimResults().omitEmptyStrings().withKeyValueSeparator('=').split(mix);
+        this.operations = new Operation[weights.size()];
+        this.cumulativeWeights = new int[weights.size()];
+        int total = 0;
+        int i = 0;
+        for(Map.Entry<String, String> weight : weights.entrySet()){
+            total += Integer.parseInt(weight.getValue().trim());
+            this.operations[i] = Operation.valueOf(weight.getKey().replaceAll("(?<=[a-z])(?=[A-Z])", "_").toUpperCase(Locale.ROOT));
+            this.cumulativeWeights[i++] = total;
+        }
+        if(total <= 0){
+            throw new IllegalArgumentException("The traffic mix needs at least one weighted operation: " + mix);
+        }
+    }
+
+    /**
+     * Reads every course on the server through the search API.
+     *
+     * @param client
+     * @throws IOException
+     */
+    void discover(CloseableHttpClient client) throws IOException{
+        String cursor = null;
+        do{
+            URIBuilder uri = this.uri(SEARCH_PATH).addParameter("size", String.valueOf(DISCOVERY_PAGE_SIZE));
+            if(cursor != null){
+                uri.addParameter("cursor", cursor);
+            }
+            JsonObject page;
+            try(CloseableHttpResponse response = client.execute(new HttpGet(build(uri)))){
+                if(response.getStatusLine().getStatusCode() != 200){
+                    throw new IOException("Course discovery failed: " + response.getStatusLine());
+                }
+                page = new JsonParser().parse(EntityUtils.toString(response.getEntity())).getAsJsonObject();
+            }
+            for(JsonElement result : page.getAsJsonArray("results")){
+                this.add(result.getAsJsonObject());
+            }
+            JsonElement next = page.get("cursor");
+            cursor = (next == null || next.isJsonNull()) ? null : next.getAsString();
+        }
+        while(cursor != null);
+
+        if(this.ids.isEmpty()){
+            throw new IOException("The server holds no courses to replay traffic against.");
+        }
+    }
+
+    private void add(JsonObject course){
+        this.ids.add(course.remove("remoteId").getAsString());
+        course.remove("distance");
+        this.documents.add(course.toString());
+
+        for(String field : new String[]{"facilityName", "nickName"}){
+            JsonElement value = course.get(field);
+            if(value != null && !value.isJsonNull()){
+                for(String term : value.getAsString().split("[^\\p{L}\\p{Nd}]+")){
+                    if(term.length() >= MIN_TERM_LENGTH){
+                        this.terms.add(term);
+                    }
+                }
+            }
+        }
+        JsonElement holes = course.get("holes");
+        if(holes != null && holes.isJsonArray()){
+            for(JsonElement hole : (JsonArray) holes){
+                this.holes.add(new double[]{hole.getAsJsonObject().get("lat").getAsDouble(),
+                                            hole.getAsJsonObject().get("lon").getAsDouble()});
+            }
+        }
+    }
+
+    Operation next(Random random){
+        int pick = random.nextInt(this.cumulativeWeights[this.cumulativeWeights.length - 1]);
+        for(int i = 0; i < this.cumulativeWeights.length; i++){
+            if(pick < this.cumulativeWeights[i]){
+                return this.operations[i];
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    HttpUriRequest request(Operation operation, Random random){
+        switch(operation){
+            case SEARCH:
+                return new HttpGet(build(this.uri(SEARCH_PATH)));
+            case SEARCH_TERM:
+                return new HttpGet(build(this.term(this.uri(SEARCH_PATH), random)));
+            case SEARCH_LOCATED:
+                return new HttpGet(build(this.location(this.uri(SEARCH_PATH), random)));
+            case SEARCH_TERM_LOCATED:
+                return new HttpGet(build(this.location(this.term(this.uri(SEARCH_PATH), random), random)));
+            case GET:
+                return new HttpGet(build(this.uri(COURSE_PATH + this.ids.get(random.nextInt(this.ids.size())))));
+            case UPDATE:
+                //Rewrites a course with its own document: the write path and cache invalidation run, the data doesn't change.
+                int course = random.nextInt(this.ids.size());
+                HttpPut put = new HttpPut(build(this.uri(COURSE_PATH + this.ids.get(course))));
+                put.setHeader(HttpHeaders.COOKIE, ID_COOKIE_NAME + "=" + this.idToken);
+                put.setEntity(new StringEntity(this.documents.get(course), ContentType.APPLICATION_JSON));
+                return put;
+            default:
+                throw new IllegalArgumentException(operation.name());
+        }
+    }
+
+    private URIBuilder term(URIBuilder uri, Random random){
+        String term = this.terms.isEmpty() ? "golf" : this.terms.get(random.nextInt(this.terms.size()));
+        if(random.nextInt(4) == 0){
+            int swap = random.nextInt(term.length() - 1);
+            term = term.substring(0, swap) + term.charAt(swap + 1) + term.charAt(swap) + term.substring(swap + 2);
+        }
+        return uri.addParameter("searchTerm", term);
+    }
+
+    private URIBuilder location(URIBuilder uri, Random random){
+        double[] hole = this.holes.isEmpty() ? new double[]{43.65, -79.38} : this.holes.get(random.nextInt(this.holes.size()));
+        return uri.addParameter("lat", String.valueOf(hole[0] + (random.nextDouble() - 0.5) * LOCATION_JITTER))
+                  .addParameter("lon", String.valueOf(hole[1] + (random.nextDouble() - 0.5) * LOCATION_JITTER));
+    }
+
+    private URIBuilder uri(String path){
+        try{
+            return new URIBuilder(this.baseUrl + path);
+        }
+        catch(URISyntaxException e){
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static URI build(URIBuilder uri){
+        try{
+            return uri.build();
+        }
+        catch(URISyntaxException e){
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
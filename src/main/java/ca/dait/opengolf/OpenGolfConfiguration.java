@@ -4,33 +4,58 @@ import ca.dait.opengolf.auth.StatelessAuthenticationFilter;
 import ca.dait.opengolf.services.CredentialsService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.web.authentication.AnonymousAuthenticationFilter;
+import org.springframework.security.web.header.writers.CacheControlHeadersWriter;
+import org.springframework.security.web.header.writers.DelegatingRequestMatcherHeaderWriter;
+import org.springframework.security.web.session.SessionManagementFilter;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.NegatedRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 
 /**
  * Default app config.
  * - Uses stateless authentication model (session persisted as cookies)
+ * - Authentication is lazy, session cookies are only verified when a service checks the users credentials. Public
+ *   services and static assets skip authentication entirely.
  * - Return 401 (UNAUTHORIZED) http code if anonymous user attempts to access service restricted to registered users.
  * - Returns 403 (FORBIDDEN) http code if user is missing the required role (AWS cognito group) to access a service.
+ * - Responses aren't cacheable, except course reads which set their own Cache-Control (see CourseController).
+ * - The metrics scraped from /actuator/prometheus are restricted to contributors.
  */
 @Configuration
 @EnableWebSecurity
 @EnableGlobalMethodSecurity(prePostEnabled = true)
 public class OpenGolfConfiguration extends WebSecurityConfigurerAdapter {
 
+    private static final RequestMatcher COURSE_READS =
+            new AntPathRequestMatcher(OpenGolfConstants.API.CONTEXT_ROOT + "/course/**", HttpMethod.GET.name());
+
+    //Under the default management base path, see application.properties.
+    private static final RequestMatcher METRICS = new AntPathRequestMatcher("/actuator/prometheus/**");
+
     @Autowired
     protected CredentialsService credentialsService;
 
     protected void configure(HttpSecurity http) throws Exception {
         http.csrf().disable()
-            .anonymous().and()
+            .anonymous().disable()
             .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS).and()
-            .addFilterBefore(new StatelessAuthenticationFilter(this.credentialsService), AnonymousAuthenticationFilter.class)
+            .headers()
+                .cacheControl().disable()
+                .addHeaderWriter(new DelegatingRequestMatcherHeaderWriter(new NegatedRequestMatcher(COURSE_READS),
+                                                                          new CacheControlHeadersWriter())).and()
+            //After session management, which would otherwise resolve the Authentication of every request.
+            .addFilterAfter(new StatelessAuthenticationFilter(this.credentialsService), SessionManagementFilter.class)
+            //No rule for any other request, permitAll() would also resolve the Authentication of every request.
+            .authorizeRequests()
+                .requestMatchers(METRICS)
+                    .access(OpenGolfConstants.Auth.IS_CONTRIBUTOR).and()
             .exceptionHandling()
                 .authenticationEntryPoint((req, res, ex) -> res.setStatus(HttpStatus.UNAUTHORIZED.value()))
                 .accessDeniedHandler((req, res, ex) -> res.setStatus(HttpStatus.FORBIDDEN.value()));
@@ -1,5 +1,8 @@
 package ca.dait.opengolf;
 
+import ca.dait.opengolf.services.BadRequestException;
+import ca.dait.opengolf.services.NotFoundException;
+import ca.dait.opengolf.services.ServiceUnavailableException;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.cognitoidp.model.AWSCognitoIdentityProviderException;
 import com.amazonaws.services.cognitoidp.model.NotAuthorizedException;
@@ -37,6 +40,22 @@ public class OpenGolfExceptionHandler{
         return new ResponseEntity<>(this.createBody(e.getErrorMessage()), HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(BadRequestException.class)
+    protected ResponseEntity<Object> handleBadRequest(BadRequestException e) {
+        return new ResponseEntity<>(this.createBody(e.getMessage()), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(NotFoundException.class)
+    protected ResponseEntity<Object> handleNotFound(NotFoundException e) {
+        return new ResponseEntity<>(this.createBody(e.getMessage()), HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler(ServiceUnavailableException.class)
+    protected ResponseEntity<Object> handleUnavailable(ServiceUnavailableException e) {
+        LOGGER.log(Level.FINEST, e.getMessage(), e);
+        return new ResponseEntity<>(this.createBody(e.getMessage()), HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
     private Map<String, String> createBody(String message){
         return ImmutableMap.of(MESSAGE_KEY, message);
     }
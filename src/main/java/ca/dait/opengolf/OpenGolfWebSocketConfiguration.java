@@ -0,0 +1,58 @@
+package ca.dait.opengolf;
+
+import ca.dait.opengolf.controllers.RoundSocketHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WebSocket endpoints.
+ * - /api/course/{id}/round streams the distance to the nearest hole during a round, see RoundSocketHandler.
+ * - Only same origin browser connections are accepted unless ENV_ROUND_ALLOWED_ORIGINS lists others, native clients
+ *   don't send an origin.
+ * - Messages are small positions, the per session buffers are sized for thousands of concurrent rounds.
+ */
+@Configuration
+@EnableWebSocket
+public class OpenGolfWebSocketConfiguration implements WebSocketConfigurer {
+
+    private static final String ROUND_PATH = OpenGolfConstants.API.CONTEXT_ROOT + "/course/*/round";
+
+    @Autowired
+    protected RoundSocketHandler roundSocketHandler;
+
+    private final String[] allowedOrigins;
+    private final int messageBufferSize;
+    private final long idleTimeout;
+
+    @Autowired
+    public OpenGolfWebSocketConfiguration(@Value("${ENV_ROUND_ALLOWED_ORIGINS:}") String[] allowedOrigins,
+                                          @Value("${ENV_ROUND_MESSAGE_BUFFER_SIZE:1024}") int messageBufferSize,
+                                          @Value("${ENV_ROUND_IDLE_TIMEOUT:900}") long idleTimeout){
+        this.allowedOrigins = allowedOrigins;
+        this.messageBufferSize = messageBufferSize;
+        this.idleTimeout = idleTimeout;
+    }
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry){
+        registry.addHandler(this.roundSocketHandler, ROUND_PATH)
+                .setAllowedOrigins(this.allowedOrigins);
+    }
+
+    @Bean
+    public ServletServerContainerFactoryBean createWebSocketContainer(){
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        container.setMaxTextMessageBufferSize(this.messageBufferSize);
+        container.setMaxBinaryMessageBufferSize(this.messageBufferSize);
+        container.setMaxSessionIdleTimeout(TimeUnit.SECONDS.toMillis(this.idleTimeout));
+        return container;
+    }
+}
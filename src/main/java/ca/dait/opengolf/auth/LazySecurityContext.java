@@ -0,0 +1,36 @@
+package ca.dait.opengolf.auth;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+
+import java.util.function.Supplier;
+
+/**
+ * Security context that only resolves the users Authentication the first time it is asked for, ie: by a
+ * {@link org.springframework.security.access.prepost.PreAuthorize} check. Requests that never ask pay nothing for
+ * authentication.
+ */
+public class LazySecurityContext implements SecurityContext {
+
+    private transient Supplier<Authentication> resolver;
+    private Authentication authentication;
+
+    public LazySecurityContext(Supplier<Authentication> resolver){
+        this.resolver = resolver;
+    }
+
+    @Override
+    public Authentication getAuthentication() {
+        if(this.resolver != null){
+            this.authentication = this.resolver.get();
+            this.resolver = null;
+        }
+        return this.authentication;
+    }
+
+    @Override
+    public void setAuthentication(Authentication authentication) {
+        this.resolver = null;
+        this.authentication = authentication;
+    }
+}
@@ -1,7 +1,10 @@
 package ca.dait.opengolf.auth;
 
 import ca.dait.opengolf.services.CredentialsService;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.filter.GenericFilterBean;
 
@@ -12,13 +15,19 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.List;
 
 /**
- * Servlet filter for stateless authentication support. Uses Credentials Service to authenticate the users session
- * cookies and set the Security Context if applicable.
+ * Servlet filter for stateless authentication support. Installs a {@link LazySecurityContext} that uses Credentials
+ * Service to authenticate the users session cookies the first time the Security Context is asked for the users
+ * Authentication. Users without valid session cookies are anonymous.
  */
 public class StatelessAuthenticationFilter extends GenericFilterBean {
 
+    private static final String ANONYMOUS_KEY = StatelessAuthenticationFilter.class.getName();
+    private static final String ANONYMOUS_PRINCIPAL = "anonymousUser";
+    private static final List<GrantedAuthority> ANONYMOUS_AUTHORITIES = AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS");
+
     private final CredentialsService credentialsService;
 
     public StatelessAuthenticationFilter(CredentialsService credentialsService){
@@ -28,11 +37,12 @@ public class StatelessAuthenticationFilter extends GenericFilterBean {
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
 
-        Authentication authentication = this.credentialsService.verifyCredentials(
+        SecurityContextHolder.setContext(new LazySecurityContext(() -> {
+            Authentication authentication = this.credentialsService.verifyCredentials(
                                                     (HttpServletRequest) request, (HttpServletResponse) response);
-        if(authentication != null){
-            SecurityContextHolder.getContext().setAuthentication(authentication);
-        }
+            return (authentication != null) ? authentication :
+                    new AnonymousAuthenticationToken(ANONYMOUS_KEY, ANONYMOUS_PRINCIPAL, ANONYMOUS_AUTHORITIES);
+        }));
         chain.doFilter(request, response);
     }
 
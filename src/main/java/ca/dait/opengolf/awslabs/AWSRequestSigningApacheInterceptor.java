@@ -1,22 +1,26 @@
 package ca.dait.opengolf.awslabs;
 
 import com.amazonaws.DefaultRequest;
+import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.Signer;
 import com.amazonaws.http.HttpMethodName;
 import org.apache.http.*;
-import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.entity.BufferedHttpEntity;
 import org.apache.http.message.BasicHeader;
 import org.apache.http.protocol.HttpContext;
 
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.http.protocol.HttpCoreContext.HTTP_TARGET_HOST;
 
@@ -26,6 +30,13 @@ import static org.apache.http.protocol.HttpCoreContext.HTTP_TARGET_HOST;
  * This is used to sign requests to the AWS Elastic Search instance.
  * - Darin
  *
+ * Changes from the original:
+ * - Repeatable entities (all Elasticsearch client requests) are hashed in place instead of being re-buffered into a
+ *   new BasicHttpEntity, so large bulk bodies are not copied and keep their content type and length.
+ * - Credentials can be cached for a short time instead of walking the provider chain on every request. The derived
+ *   signing key is already cached per day/region/service by {@link com.amazonaws.auth.AWS4Signer}.
+ * - The request URI is parsed once, and query parameters only when present.
+ *
  * An {@link HttpRequestInterceptor} that signs requests using any AWS {@link Signer}
  * and {@link AWSCredentialsProvider}.
  */
@@ -46,6 +57,13 @@ public class AWSRequestSigningApacheInterceptor implements HttpRequestIntercepto
      */
     private final AWSCredentialsProvider awsCredentialsProvider;
 
+    /**
+     * How long credentials are reused before asking the provider again, 0 to always ask.
+     */
+    private final long credentialsTtlNanos;
+
+    private volatile CachedCredentials cachedCredentials;
+
     /**
      *
      * @param service service that we're connecting to
@@ -55,9 +73,24 @@ public class AWSRequestSigningApacheInterceptor implements HttpRequestIntercepto
     public AWSRequestSigningApacheInterceptor(final String service,
                                               final Signer signer,
                                               final AWSCredentialsProvider awsCredentialsProvider) {
+        this(service, signer, awsCredentialsProvider, 0);
+    }
+
+    /**
+     *
+     * @param service service that we're connecting to
+     * @param signer particular signer implementation
+     * @param awsCredentialsProvider source of AWS credentials for signing
+     * @param credentialsTtl seconds to reuse credentials before asking the provider again, 0 to always ask
+     */
+    public AWSRequestSigningApacheInterceptor(final String service,
+                                              final Signer signer,
+                                              final AWSCredentialsProvider awsCredentialsProvider,
+                                              final long credentialsTtl) {
         this.service = service;
         this.signer = signer;
         this.awsCredentialsProvider = awsCredentialsProvider;
+        this.credentialsTtlNanos = TimeUnit.SECONDS.toNanos(credentialsTtl);
     }
 
     /**
@@ -66,9 +99,9 @@ public class AWSRequestSigningApacheInterceptor implements HttpRequestIntercepto
     @Override
     public void process(final HttpRequest request, final HttpContext context)
             throws HttpException, IOException {
-        URIBuilder uriBuilder;
+        URI uri;
         try {
-            uriBuilder = new URIBuilder(request.getRequestLine().getUri());
+            uri = new URI(request.getRequestLine().getUri());
         } catch (URISyntaxException e) {
             throw new IOException("Invalid URI" , e);
         }
@@ -83,36 +116,60 @@ public class AWSRequestSigningApacheInterceptor implements HttpRequestIntercepto
         final HttpMethodName httpMethod =
                 HttpMethodName.fromValue(request.getRequestLine().getMethod());
         signableRequest.setHttpMethod(httpMethod);
-        try {
-            signableRequest.setResourcePath(uriBuilder.build().getRawPath());
-        } catch (URISyntaxException e) {
-            throw new IOException("Invalid URI" , e);
-        }
+        signableRequest.setResourcePath(uri.getRawPath());
 
         if (request instanceof HttpEntityEnclosingRequest) {
             HttpEntityEnclosingRequest httpEntityEnclosingRequest =
                     (HttpEntityEnclosingRequest) request;
-            if (httpEntityEnclosingRequest.getEntity() != null) {
-                signableRequest.setContent(httpEntityEnclosingRequest.getEntity().getContent());
+            HttpEntity entity = httpEntityEnclosingRequest.getEntity();
+            if (entity != null) {
+                // The signer consumes the content to hash it, buffer only entities that can't be read twice.
+                if (!entity.isRepeatable()) {
+                    entity = new BufferedHttpEntity(entity);
+                    httpEntityEnclosingRequest.setEntity(entity);
+                }
+                signableRequest.setContent(entity.getContent());
             }
         }
 
-        signableRequest.setParameters(nvpToMapParams(uriBuilder.getQueryParams()));
+        if (uri.getRawQuery() != null) {
+            signableRequest.setParameters(nvpToMapParams(URLEncodedUtils.parse(uri, StandardCharsets.UTF_8)));
+        }
+        else {
+            signableRequest.setParameters(Collections.emptyMap());
+        }
         signableRequest.setHeaders(headerArrayToMap(request.getAllHeaders()));
 
         // Sign it
-        signer.sign(signableRequest, awsCredentialsProvider.getCredentials());
+        signer.sign(signableRequest, getCredentials());
 
-        // Now copy everything back
+        // Now copy the signed headers back, the entity is left as is.
         request.setHeaders(mapToHeaderArray(signableRequest.getHeaders()));
-        if (request instanceof HttpEntityEnclosingRequest) {
-            HttpEntityEnclosingRequest httpEntityEnclosingRequest =
-                    (HttpEntityEnclosingRequest) request;
-            if (httpEntityEnclosingRequest.getEntity() != null) {
-                BasicHttpEntity basicHttpEntity = new BasicHttpEntity();
-                basicHttpEntity.setContent(signableRequest.getContent());
-                httpEntityEnclosingRequest.setEntity(basicHttpEntity);
-            }
+    }
+
+    /**
+     * @return credentials from the provider, reused until the credentials TTL has passed
+     */
+    private AWSCredentials getCredentials() {
+        if (credentialsTtlNanos <= 0) {
+            return awsCredentialsProvider.getCredentials();
+        }
+        long now = System.nanoTime();
+        CachedCredentials cached = cachedCredentials;
+        if (cached == null || now - cached.loadedAt >= credentialsTtlNanos) {
+            cached = new CachedCredentials(awsCredentialsProvider.getCredentials(), now);
+            cachedCredentials = cached;
+        }
+        return cached.credentials;
+    }
+
+    private static final class CachedCredentials {
+        private final AWSCredentials credentials;
+        private final long loadedAt;
+
+        private CachedCredentials(final AWSCredentials credentials, final long loadedAt) {
+            this.credentials = credentials;
+            this.loadedAt = loadedAt;
         }
     }
 
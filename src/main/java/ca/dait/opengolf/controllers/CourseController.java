@@ -2,16 +2,30 @@ package ca.dait.opengolf.controllers;
 
 import ca.dait.opengolf.OpenGolfConstants;
 import ca.dait.opengolf.entities.course.Course;
-import ca.dait.opengolf.entities.course.CourseSearchResult;
+import ca.dait.opengolf.services.CourseBulkResult;
+import ca.dait.opengolf.services.CourseJson;
+import ca.dait.opengolf.services.CoursePackService;
+import ca.dait.opengolf.services.CourseRegion;
 import ca.dait.opengolf.services.CourseService;
+import ca.dait.opengolf.services.JsonBody;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Course API endpoints
@@ -20,21 +34,105 @@ import java.io.IOException;
 @RequestMapping(OpenGolfConstants.API.CONTEXT_ROOT + "/course")
 public class CourseController {
 
+    private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    private static final String VIEW_SUMMARY = "summary";
+    private static final String ANY_ETAG = "*";
+    private static final String WEAK_ETAG_PREFIX = "W/";
+    private static final String PACK_PATH = OpenGolfConstants.API.CONTEXT_ROOT + "/course/packs/";
+    private static final String PACK_CACHE_CONTROL = "public, max-age=31536000, immutable";
+    //A cached change page would hide changes made since, clients always revalidate.
+    private static final String CHANGES_CACHE_CONTROL = "no-cache";
+
     @Autowired
     protected CourseService courseService;
 
+    @Autowired
+    protected CoursePackService coursePackService;
+
+    //Cache-Control of course and search responses, empty to send none.
+    @Value("${ENV_COURSE_CACHE_CONTROL:public, max-age=300}")
+    protected String courseCacheControl;
+
+    @Value("${ENV_SEARCH_CACHE_CONTROL:public, max-age=60}")
+    protected String searchCacheControl;
+
     @RequestMapping(value="{id}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Course> get(@PathVariable("id") String id) throws IOException {
-        Course result = this.courseService.get(id);
-        return new ResponseEntity<>(result, (result == null) ? HttpStatus.NOT_FOUND : HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<JsonBody>> get(@PathVariable("id") String id,
+                                                           @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return this.courseService.getHitAsync(id)
+                    .thenApply((hit) -> {
+                        if(hit == null){
+                            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+                        }
+                        //Revalidation only needs the tag, the document isn't written.
+                        String etag = hit.etag();
+                        if(matches(ifNoneMatch, etag)){
+                            return cacheable(ResponseEntity.status(HttpStatus.NOT_MODIFIED), this.courseCacheControl)
+                                        .eTag(etag).build();
+                        }
+                        return cacheable(ResponseEntity.ok(), this.courseCacheControl)
+                                    .eTag(etag).body(CourseJson.course(hit));
+                    });
+    }
+
+    @RequestMapping(value="batch", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<JsonBody>> batch(@RequestParam(value = "ids") List<String> ids,
+                                                             @RequestParam(value = "view", required = false) String view) {
+        boolean summary = VIEW_SUMMARY.equalsIgnoreCase(view);
+        return this.courseService.getHitsAsync(ids)
+                    .thenApply((hits) -> cacheable(ResponseEntity.ok(), this.courseCacheControl)
+                                            .body(CourseJson.batchResult(hits, summary)));
     }
 
     @RequestMapping(value="search", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public CourseSearchResult search(@RequestParam(value = "searchTerm", required = false) String searchTerm,
-                                     @RequestParam(value = "lat", required = false) Double lat,
-                                     @RequestParam(value = "lon", required = false) Double lon) throws IOException {
+    public CompletableFuture<ResponseEntity<JsonBody>> search(@RequestParam(value = "searchTerm", required = false) String searchTerm,
+                                                              @RequestParam(value = "lat", required = false) Double lat,
+                                                              @RequestParam(value = "lon", required = false) Double lon,
+                                                              @RequestParam(value = "view", required = false) String view,
+                                                              @RequestParam(value = "size", required = false) Integer size,
+                                                              @RequestParam(value = "cursor", required = false) String cursor) {
         //TODO: add input validation
-        return this.courseService.search(searchTerm, lat, lon);
+        boolean summary = VIEW_SUMMARY.equalsIgnoreCase(view);
+        return this.courseService.searchPageAsync(searchTerm, lat, lon, size, cursor)
+                    .thenApply((page) -> cacheable(ResponseEntity.ok(), this.searchCacheControl)
+                                            .body(CourseJson.searchResult(page, lat, lon, summary)));
+    }
+
+    @RequestMapping(value="changes", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<JsonBody>> changes(@RequestParam(value = "since", required = false) Long since,
+                                                               @RequestParam(value = "size", required = false) Integer size,
+                                                               @RequestParam(value = "cursor", required = false) String cursor) {
+        return this.courseService.changesAsync(since, size, cursor)
+                    .thenApply((page) -> ResponseEntity.ok()
+                                            .header(HttpHeaders.CACHE_CONTROL, CHANGES_CACHE_CONTROL)
+                                            .body(CourseJson.changesResult(page)));
+    }
+
+    /**
+     * Redirects to the pack of the given region, see CoursePackService.
+     */
+    @RequestMapping(value="packs", method = RequestMethod.GET)
+    public ResponseEntity<Void> pack(@RequestParam(value = "bbox", required = false) String bbox,
+                                     @RequestParam(value = "country", required = false) String country,
+                                     @RequestParam(value = "state", required = false) String state) throws IOException {
+        String pack = this.coursePackService.getPack(CourseRegion.of(bbox, country, state));
+        return cacheable(ResponseEntity.status(HttpStatus.FOUND), this.searchCacheControl)
+                    .location(URI.create(PACK_PATH + pack))
+                    .build();
+    }
+
+    /**
+     * A pack never changes once written, its name is the hash of its content.
+     */
+    @RequestMapping(value="packs/{pack}", method = RequestMethod.GET, produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<Resource> packFile(@PathVariable("pack") String pack) {
+        Path file = this.coursePackService.getPackFile(pack);
+        if(file == null){
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return cacheable(ResponseEntity.ok(), PACK_CACHE_CONTROL)
+                    .eTag("\"" + pack + "\"")
+                    .body(new FileSystemResource(file.toFile()));
     }
 
     @PreAuthorize(OpenGolfConstants.Auth.IS_CONTRIBUTOR)
@@ -45,6 +143,15 @@ public class CourseController {
         return new ResponseEntity<>(result, HttpStatus.CREATED);
     }
 
+    @PreAuthorize(OpenGolfConstants.Auth.IS_CONTRIBUTOR)
+    @RequestMapping(value="bulk", method = RequestMethod.POST,
+            consumes = APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public CourseBulkResult bulk(Reader body) throws IOException {
+        try(BufferedReader reader = new BufferedReader(body)){
+            return this.courseService.bulkAdd(reader.lines());
+        }
+    }
+
     @PreAuthorize(OpenGolfConstants.Auth.IS_CONTRIBUTOR)
     @RequestMapping(value="{id}", method = RequestMethod.PUT, consumes = MediaType.APPLICATION_JSON_VALUE)
     public void update(@PathVariable("id") String id, @RequestBody Course courseDetails) throws IOException {
@@ -56,4 +163,32 @@ public class CourseController {
     public void delete(@PathVariable("id") String id) throws IOException {
         this.courseService.delete(id);
     }
+
+    private static ResponseEntity.BodyBuilder cacheable(ResponseEntity.BodyBuilder response, String cacheControl){
+        return cacheControl.isEmpty() ? response : response.header(HttpHeaders.CACHE_CONTROL, cacheControl);
+    }
+
+    /**
+     * Whether an If-None-Match header matches the given entity tag. Tags are compared weakly as the header requires,
+     * so a tag marked weak (W/) by an intermediary still matches.
+     *
+     * @param ifNoneMatch Header value, null if not sent.
+     * @param etag
+     * @return
+     */
+    static boolean matches(String ifNoneMatch, String etag){
+        if(ifNoneMatch == null){
+            return false;
+        }
+        for(String tag : ifNoneMatch.split(",")){
+            tag = tag.trim();
+            if(tag.startsWith(WEAK_ETAG_PREFIX)){
+                tag = tag.substring(WEAK_ETAG_PREFIX.length());
+            }
+            if(tag.equals(ANY_ETAG) || tag.equals(etag)){
+                return true;
+            }
+        }
+        return false;
+    }
 }
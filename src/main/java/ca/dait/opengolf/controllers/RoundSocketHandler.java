@@ -0,0 +1,186 @@
+package ca.dait.opengolf.controllers;
+
+import ca.dait.opengolf.services.CourseService;
+import ca.dait.opengolf.services.HoleGeometry;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Live distance to the green during a round, over a WebSocket at /api/course/{id}/round.
+ *
+ * The client sends each position fix as {"lat":43.68,"lon":-79.34} and is answered with the nearest hole (1 based)
+ * and the distance to it in meters: {"hole":3,"distance":123.4}, or {"error":"..."} for an invalid position or a
+ * course without hole positions. The course's hole geometry is read once, through the course cache, when the socket
+ * opens. Positions are then answered in memory without any search traffic, changes to the course during a round
+ * aren't seen until it reconnects.
+ *
+ * The socket is closed with 4404 if the course doesn't exist, 1013 (try again later) if it couldn't be read, and 4500
+ * (session not reliable) if the client can't keep up with its replies.
+ */
+@Component
+public class RoundSocketHandler extends TextWebSocketHandler {
+
+    private static final String ATTRIBUTE_SESSION = "round.session";
+    private static final String ATTRIBUTE_GEOMETRY = "round.geometry";
+
+    private static final CloseStatus COURSE_NOT_FOUND = new CloseStatus(4404, "Course not found.");
+
+    private static final String METRIC_SESSIONS = "opengolf.round.sessions";
+    private static final String METRIC_POSITIONS = "opengolf.round.positions";
+
+    private static final Logger LOGGER = Logger.getLogger(RoundSocketHandler.class.getName());
+
+    private final CourseService courseService;
+    private final int sendTimeLimit;
+    private final int sendBufferSize;
+
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final Counter positions;
+
+    @Autowired
+    private Gson gson;
+
+    @Autowired
+    public RoundSocketHandler(CourseService courseService,
+                              @Value("${ENV_ROUND_SEND_TIME_LIMIT:5000}") int sendTimeLimit,
+                              @Value("${ENV_ROUND_SEND_BUFFER_SIZE:8192}") int sendBufferSize,
+                              MeterRegistry meterRegistry){
+        this.courseService = courseService;
+        this.sendTimeLimit = sendTimeLimit;
+        this.sendBufferSize = sendBufferSize;
+
+        Gauge.builder(METRIC_SESSIONS, this.sessions, AtomicInteger::get).register(meterRegistry);
+        this.positions = Counter.builder(METRIC_POSITIONS).register(meterRegistry);
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session){
+        this.sessions.incrementAndGet();
+
+        //Replies can be sent from the thread completing the course read, sends have to be serialized.
+        WebSocketSession concurrent = new ConcurrentWebSocketSessionDecorator(session, this.sendTimeLimit, this.sendBufferSize);
+        CompletableFuture<HoleGeometry> geometry = this.courseService.getHitAsync(courseId(session))
+                                                                     .thenApply((hit) -> (hit == null) ? null : hit.geometry);
+        session.getAttributes().put(ATTRIBUTE_SESSION, concurrent);
+        session.getAttributes().put(ATTRIBUTE_GEOMETRY, geometry);
+
+        geometry.whenComplete((holes, e) -> {
+            if(e != null){
+                LOGGER.log(Level.WARNING, "Failed to read the course of round " + session.getId(), e);
+                close(concurrent, CloseStatus.SERVICE_OVERLOAD);
+            }
+            else if(holes == null){
+                close(concurrent, COURSE_NOT_FOUND);
+            }
+        });
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void handleTextMessage(WebSocketSession session, TextMessage message){
+        this.positions.increment();
+        WebSocketSession concurrent = (WebSocketSession) session.getAttributes().get(ATTRIBUTE_SESSION);
+        CompletableFuture<HoleGeometry> geometry = (CompletableFuture<HoleGeometry>) session.getAttributes().get(ATTRIBUTE_GEOMETRY);
+
+        Position position;
+        try{
+            position = this.gson.fromJson(message.getPayload(), Position.class);
+        }
+        catch(JsonParseException e){
+            position = null;
+        }
+        if(position == null || position.lat == null || position.lon == null){
+            this.send(concurrent, new Reply("Position requires lat and lon."));
+            return;
+        }
+
+        Position fix = position;
+        geometry.thenAccept((holes) -> {
+            if(holes != null){
+                int hole = holes.nearestHole(fix.lat, fix.lon);
+                this.send(concurrent, (hole < 0) ? new Reply("Course has no hole positions.")
+                                                 : new Reply(hole + 1, holes.distance(hole, fix.lat, fix.lon)));
+            }
+        });
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status){
+        this.sessions.decrementAndGet();
+    }
+
+    private void send(WebSocketSession session, Reply reply){
+        try{
+            session.sendMessage(new TextMessage(this.gson.toJson(reply)));
+        }
+        catch(SessionLimitExceededException e){
+            //Too slow to keep up. Replies can be sent from the thread completing the course read, nothing would close it.
+            LOGGER.log(Level.FINE, "Round " + session.getId() + " is over its send limits", e);
+            close(session, e.getStatus());
+        }
+        catch(IOException | IllegalStateException e){
+            //Closed.
+            LOGGER.log(Level.FINE, "Failed to send to round " + session.getId(), e);
+        }
+    }
+
+    private static void close(WebSocketSession session, CloseStatus status){
+        try{
+            session.close(status);
+        }
+        catch(IOException e){
+            LOGGER.log(Level.FINE, "Failed to close round " + session.getId(), e);
+        }
+    }
+
+    /**
+     * The course ID path segment of /api/course/{id}/round
+     *
+     * @param session
+     * @return
+     */
+    private static String courseId(WebSocketSession session){
+        String[] segments = session.getUri().getRawPath().split("/");
+        return UriUtils.decode(segments[segments.length - 2], StandardCharsets.UTF_8);
+    }
+
+    private static class Position {
+        Double lat;
+        Double lon;
+    }
+
+    private static class Reply {
+        Integer hole;
+        Double distance;
+        String error;
+
+        Reply(Integer hole, Double distance){
+            this.hole = hole;
+            this.distance = distance;
+        }
+
+        Reply(String error){
+            this.error = error;
+        }
+    }
+}
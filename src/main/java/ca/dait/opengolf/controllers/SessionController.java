@@ -5,6 +5,8 @@ import ca.dait.opengolf.auth.AuthenticationTokens;
 import ca.dait.opengolf.services.CredentialsService;
 import ca.dait.opengolf.services.LoginService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -13,6 +15,7 @@ import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Session API endpoints
@@ -28,22 +31,18 @@ public class SessionController {
     private LoginService cognitoLoginService;
 
     @RequestMapping(method = RequestMethod.POST)
-    public void login(@RequestParam("username") String username,
-                      @RequestParam("password") String password,
-                      HttpServletResponse response) throws IOException {
+    public CompletableFuture<ResponseEntity<Void>> login(@RequestParam("username") String username,
+                                                         @RequestParam("password") String password) {
 
-        AuthenticationTokens tokens = this.cognitoLoginService.login(username, password);
-        this.credentialsService.save(tokens, response);
+        return this.cognitoLoginService.login(username, password).thenApply(this::saved);
     }
 
     @RequestMapping(method = RequestMethod.POST, path="confirm")
-    public void confirm(@RequestParam("username") String username,
-                        @RequestParam("tempPassword") String tempPassword,
-                        @RequestParam("newPassword") String newPassword,
-                        HttpServletResponse response) throws IOException {
+    public CompletableFuture<ResponseEntity<Void>> confirm(@RequestParam("username") String username,
+                                                           @RequestParam("tempPassword") String tempPassword,
+                                                           @RequestParam("newPassword") String newPassword) {
 
-        AuthenticationTokens tokens = this.cognitoLoginService.confirmRegistration(username, tempPassword, newPassword);
-        this.credentialsService.save(tokens, response);
+        return this.cognitoLoginService.confirmRegistration(username, tempPassword, newPassword).thenApply(this::saved);
     }
 
     @PreAuthorize(OpenGolfConstants.Auth.IS_AUTHENTICATED)
@@ -51,4 +50,19 @@ public class SessionController {
     public void logoff(HttpServletResponse response) throws IOException {
         this.credentialsService.clear(response);
     }
+
+    /**
+     * The tokens are saved as Set-Cookie headers of the response entity. The login completes on a Cognito thread,
+     * the response is only written once the request is dispatched back to the container.
+     *
+     * @param tokens
+     * @return
+     */
+    private ResponseEntity<Void> saved(AuthenticationTokens tokens){
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        for(String cookie : this.credentialsService.cookies(tokens)){
+            response.header(HttpHeaders.SET_COOKIE, cookie);
+        }
+        return response.build();
+    }
 }
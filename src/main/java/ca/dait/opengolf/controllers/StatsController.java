@@ -0,0 +1,49 @@
+package ca.dait.opengolf.controllers;
+
+import ca.dait.opengolf.OpenGolfConstants;
+import ca.dait.opengolf.services.CourseService;
+import ca.dait.opengolf.services.CredentialsService;
+import ca.dait.opengolf.services.LoginService;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Server statistics API endpoints
+ */
+@RestController
+@RequestMapping(OpenGolfConstants.API.CONTEXT_ROOT + "/stats")
+public class StatsController {
+
+    @Autowired
+    protected CourseService courseService;
+
+    @Autowired
+    protected CredentialsService credentialsService;
+
+    @Autowired
+    protected LoginService loginService;
+
+    @PreAuthorize(OpenGolfConstants.Auth.IS_CONTRIBUTOR)
+    @RequestMapping(value="cache", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, CacheStats> cache() {
+        return ImmutableMap.<String, CacheStats>builder()
+                    .putAll(this.courseService.getCacheStats())
+                    .putAll(this.credentialsService.getCacheStats())
+                    .putAll(this.loginService.getCacheStats())
+                    .build();
+    }
+
+    @PreAuthorize(OpenGolfConstants.Auth.IS_CONTRIBUTOR)
+    @RequestMapping(value="connections", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Integer> connections() {
+        return this.courseService.getConnectionStats();
+    }
+}
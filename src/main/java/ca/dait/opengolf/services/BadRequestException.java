@@ -0,0 +1,15 @@
+package ca.dait.opengolf.services;
+
+/**
+ * Thrown when a request contains invalid parameters.
+ */
+public class BadRequestException extends RuntimeException {
+
+    public BadRequestException(String message){
+        super(message);
+    }
+
+    public BadRequestException(String message, Throwable cause){
+        super(message, cause);
+    }
+}
@@ -0,0 +1,80 @@
+package ca.dait.opengolf.services;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Simple consecutive failure circuit breaker.
+ * - CLOSED: Calls are allowed. Opens after the failure threshold is reached in a row.
+ * - OPEN: Calls are rejected until the open interval has passed.
+ * - HALF_OPEN: A single trial call is allowed. Closes on success, opens again on failure.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    private static final Logger LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+
+    /**
+     * @param name              Name used when logging state changes.
+     * @param failureThreshold  Consecutive failures before the breaker opens.
+     * @param openInterval      Seconds the breaker stays open before allowing a trial call.
+     */
+    public CircuitBreaker(String name, int failureThreshold, long openInterval){
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = TimeUnit.SECONDS.toNanos(openInterval);
+    }
+
+    /**
+     * Checks if a call may proceed. Callers that are allowed must report the outcome with recordSuccess or
+     * recordFailure.
+     *
+     * @return
+     */
+    public synchronized boolean allowRequest(){
+        switch(this.state){
+            case CLOSED:
+                return true;
+            case OPEN:
+                if(System.nanoTime() - this.openedAt >= this.openNanos){
+                    this.state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                //Trial call already in flight.
+                return false;
+        }
+    }
+
+    public synchronized void recordSuccess(){
+        if(this.state != State.CLOSED){
+            LOGGER.log(Level.INFO, "Circuit breaker closed: " + this.name);
+        }
+        this.state = State.CLOSED;
+        this.failures = 0;
+    }
+
+    public synchronized void recordFailure(){
+        this.failures++;
+        if(this.state == State.HALF_OPEN || (this.state == State.CLOSED && this.failures >= this.failureThreshold)){
+            LOGGER.log(Level.WARNING, "Circuit breaker opened: " + this.name + " after " + this.failures + " failures.");
+            this.state = State.OPEN;
+            this.openedAt = System.nanoTime();
+        }
+    }
+
+    public synchronized State getState(){
+        return this.state;
+    }
+}
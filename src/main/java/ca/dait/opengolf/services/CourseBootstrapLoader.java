@@ -0,0 +1,77 @@
+package ca.dait.opengolf.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Loads the bootstrap course data (see es_bootstrap_json) on startup when ENV_BOOTSTRAP_DIR is set. The course index
+ * is created from coursemapping.json and every file under courses/ is bulk indexed, if the index already exists
+ * nothing is loaded.
+ *
+ * To run as a one off loader rather than alongside the server:
+ *  java -jar opengolf-server.jar --ENV_BOOTSTRAP_DIR=es_bootstrap_json --spring.main.web-application-type=none
+ */
+@Component
+@ConditionalOnProperty("ENV_BOOTSTRAP_DIR")
+public class CourseBootstrapLoader implements ApplicationRunner {
+
+    private static final String MAPPING_FILE = "coursemapping.json";
+    private static final String COURSES_DIR = "courses";
+    private static final String COURSE_FILE_GLOB = "*.json";
+
+    private static final Logger LOGGER = Logger.getLogger(CourseBootstrapLoader.class.getName());
+
+    @Autowired
+    protected CourseService courseService;
+
+    private final Path bootstrapDir;
+
+    @Autowired
+    public CourseBootstrapLoader(@Value("${ENV_BOOTSTRAP_DIR}") String bootstrapDir){
+        this.bootstrapDir = Paths.get(bootstrapDir);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        String mapping = new String(Files.readAllBytes(this.bootstrapDir.resolve(MAPPING_FILE)), StandardCharsets.UTF_8);
+        if(!this.courseService.createIndex(mapping)){
+            LOGGER.log(Level.INFO, "Course index already exists, skipping bootstrap.");
+            return;
+        }
+
+        CourseBulkResult result;
+        try(Stream<Path> files = Files.list(this.bootstrapDir.resolve(COURSES_DIR))){
+            result = this.courseService.bulkAdd(files.filter((file) -> file.getFileSystem()
+                                                                           .getPathMatcher("glob:" + COURSE_FILE_GLOB)
+                                                                           .matches(file.getFileName()))
+                                                     .sorted()
+                                                     .map(CourseBootstrapLoader::read));
+        }
+        LOGGER.log(Level.INFO, "Bootstrapped " + result.getIndexed() + " courses from " + this.bootstrapDir);
+        result.getFailures().forEach((failure) ->
+                LOGGER.log(Level.WARNING, "Failed to bootstrap course " + failure.document + ": " + failure.message));
+    }
+
+    private static String read(Path file){
+        try{
+            return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        }
+        catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package ca.dait.opengolf.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk course ingestion. Failures are reported per document, identified by their position (1 based) in
+ * the ingested stream.
+ */
+public class CourseBulkResult {
+
+    private int indexed;
+    private final List<Failure> failures = new ArrayList<>();
+
+    synchronized void indexed(){
+        this.indexed++;
+    }
+
+    synchronized void failed(int document, String message){
+        this.failures.add(new Failure(document, message));
+    }
+
+    public synchronized int getIndexed(){
+        return this.indexed;
+    }
+
+    public synchronized List<Failure> getFailures(){
+        return new ArrayList<>(this.failures);
+    }
+
+    public static class Failure {
+        public final int document;
+        public final String message;
+
+        public Failure(int document, String message){
+            this.document = document;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ca.dait.opengolf.services;
+
+import java.util.List;
+
+/**
+ * A page of changed courses and tombstones, the cursor to request the page after it (null when this is the last page)
+ * and the upper bound of the modification times covered, to pass as since on the next sync.
+ */
+public class CourseChangePage {
+    public final List<CourseHit> hits;
+    public final String cursor;
+    public final long until;
+
+    public CourseChangePage(List<CourseHit> hits, String cursor, long until){
+        this.hits = hits;
+        this.cursor = cursor;
+        this.until = until;
+    }
+}
@@ -0,0 +1,17 @@
+package ca.dait.opengolf.services;
+
+/**
+ * A course document to bulk index: its position (1 based) in the ingested stream, the ID to replace or null to add
+ * a new course, and its JSON source.
+ */
+public class CourseDocument {
+    public final int number;
+    public final String id;
+    public final String source;
+
+    public CourseDocument(int number, String id, String source){
+        this.number = number;
+        this.id = id;
+        this.source = source;
+    }
+}
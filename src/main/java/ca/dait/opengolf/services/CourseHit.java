@@ -0,0 +1,132 @@
+package ca.dait.opengolf.services;
+
+import com.google.common.hash.Hashing;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A course document as returned by the index: its ID, raw JSON source and the geometry of its holes.
+ */
+public class CourseHit {
+
+    private static final String FIELD_HOLES = "holes";
+    private static final String FIELD_DELETED = "deleted";
+
+    /**
+     * Fields kept by the summary projection, everything needed to list a course without its geometry.
+     */
+    public static final String[] SUMMARY_FIELDS = new String[]{"facilityName", "nickName", "municipality", "state", "country"};
+
+    public final String id;
+    public final byte[] source;
+    public final HoleGeometry geometry;
+
+    private volatile byte[] summary;
+    private volatile String etag;
+
+    public CourseHit(String id, byte[] source, HoleGeometry geometry){
+        this.id = id;
+        this.source = source;
+        this.geometry = geometry;
+    }
+
+    /**
+     * Creates a hit from the raw document source, streaming the hole geometry out of it. Other fields are skipped
+     * without being materialized.
+     *
+     * @param id
+     * @param source
+     * @return
+     */
+    public static CourseHit of(String id, byte[] source){
+        HoleGeometry geometry = null;
+        try(JsonReader in = new JsonReader(reader(source))){
+            in.beginObject();
+            while(in.hasNext()){
+                if(FIELD_HOLES.equals(in.nextName())){
+                    geometry = HoleGeometry.read(in);
+                }
+                else{
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+        }
+        catch(IOException e){
+            //Only thrown for malformed documents, the source is already in memory.
+            throw new JsonParseException(e);
+        }
+        return new CourseHit(id, source, (geometry == null) ? HoleGeometry.EMPTY : geometry);
+    }
+
+    /**
+     * The record left by a deleted course: {"modified":1546300800000,"deleted":true}
+     *
+     * @param id
+     * @param modified Time of the delete, epoch milliseconds.
+     * @return
+     */
+    public static CourseHit tombstone(String id, long modified){
+        JsonObject document = new JsonObject();
+        document.addProperty(CourseRepository.FIELD_MODIFIED, modified);
+        document.addProperty(FIELD_DELETED, true);
+        return new CourseHit(id, document.toString().getBytes(StandardCharsets.UTF_8), HoleGeometry.EMPTY);
+    }
+
+    /**
+     * The source reduced to {@link #SUMMARY_FIELDS}. Computed on first use and kept with the hit, so cached hits only
+     * pay for the projection once.
+     *
+     * @return
+     */
+    public byte[] summary(){
+        byte[] result = this.summary;
+        if(result == null){
+            JsonObject document = new JsonParser().parse(reader(this.source)).getAsJsonObject();
+            JsonObject projection = new JsonObject();
+            for(String field : SUMMARY_FIELDS){
+                JsonElement value = document.get(field);
+                if(value != null && !value.isJsonNull()){
+                    projection.add(field, value);
+                }
+            }
+            result = projection.toString().getBytes(StandardCharsets.UTF_8);
+            this.summary = result;
+        }
+        return result;
+    }
+
+    /**
+     * Strong entity tag of the source, a hash of its bytes: the same document has the same tag on every node and
+     * repository. Computed on first use and kept with the hit, like the summary.
+     *
+     * @return The quoted tag, ie: "3c9b0b5c1e4f7a2d8e6b1f0a9c8d7e6f"
+     */
+    public String etag(){
+        String result = this.etag;
+        if(result == null){
+            result = "\"" + Hashing.murmur3_128().hashBytes(this.source) + "\"";
+            this.etag = result;
+        }
+        return result;
+    }
+
+    /**
+     * Reader over the source. Decoded to a String up front, an InputStreamReader allocates an 8KB decode buffer per
+     * reader, which is more than most course documents.
+     *
+     * @param source
+     * @return
+     */
+    static Reader reader(byte[] source){
+        return new StringReader(new String(source, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,166 @@
+package ca.dait.opengolf.services;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes course responses straight from the raw document sources held in {@link CourseHit}s. The remoteId and
+ * distance members are spliced in front of the source members, the output matches the Gson serialization of
+ * Course/CourseSearchResult apart from whitespace and explicit nulls.
+ */
+public final class CourseJson {
+    private CourseJson(){}
+
+    private static final byte[] RESULTS_START = "{\"results\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RESULTS_END = "]".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CURSOR = ",\"cursor\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MISSING = ",\"missing\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] UNTIL = ",\"until\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] REMOTE_ID = "{\"remoteId\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DISTANCE = ",\"distance\":".getBytes(StandardCharsets.UTF_8);
+
+    private static final Gson GSON = new Gson();
+
+    /**
+     * A single course document, written as stored.
+     *
+     * @param hit
+     * @return
+     */
+    public static JsonBody course(CourseHit hit){
+        return (out) -> out.write(hit.source);
+    }
+
+    /**
+     * Search results, ie: {"results":[{"remoteId":"...","distance":123.4, ...source members}],"cursor":"..."}. The
+     * distance to the nearest hole is only included when co-ordinates are given, the cursor only when there may be
+     * another page.
+     *
+     * @param page
+     * @param lat
+     * @param lon
+     * @param summary Write only the summary fields of each course, see {@link CourseHit#summary()}.
+     * @return
+     */
+    public static JsonBody searchResult(CourseSearchPage page, Double lat, Double lon, boolean summary){
+        return (out) -> {
+            List<CourseHit> hits = page.hits;
+            out.write(RESULTS_START);
+            for(int i = 0; i < hits.size(); i++){
+                if(i > 0){
+                    out.write(',');
+                }
+                CourseHit hit = hits.get(i);
+                Double distance = (lat != null && lon != null) ? hit.geometry.nearestDistance(lat, lon) : null;
+                writeHit(hit.id, (summary) ? hit.summary() : hit.source, distance, out);
+            }
+            out.write(RESULTS_END);
+            if(page.cursor != null){
+                out.write(CURSOR);
+                out.write(GSON.toJson(page.cursor).getBytes(StandardCharsets.UTF_8));
+            }
+            out.write('}');
+        };
+    }
+
+    /**
+     * Courses read by ID, ie: {"results":[{"remoteId":"...", ...source members}],"missing":["..."]}. Found courses
+     * are written in the order given, followed by the IDs of courses that don't exist.
+     *
+     * @param hits Hits by ID, null for courses that don't exist.
+     * @param summary Write only the summary fields of each course, see {@link CourseHit#summary()}.
+     * @return
+     */
+    public static JsonBody batchResult(Map<String, CourseHit> hits, boolean summary){
+        return (out) -> {
+            List<String> missing = new ArrayList<>();
+            out.write(RESULTS_START);
+            boolean first = true;
+            for(Map.Entry<String, CourseHit> entry : hits.entrySet()){
+                CourseHit hit = entry.getValue();
+                if(hit == null){
+                    missing.add(entry.getKey());
+                    continue;
+                }
+                if(!first){
+                    out.write(',');
+                }
+                first = false;
+                writeHit(hit.id, (summary) ? hit.summary() : hit.source, null, out);
+            }
+            out.write(RESULTS_END);
+            out.write(MISSING);
+            out.write(GSON.toJson(missing).getBytes(StandardCharsets.UTF_8));
+            out.write('}');
+        };
+    }
+
+    /**
+     * Changed courses and tombstones, ie:
+     * {"results":[{"remoteId":"...", ...source members},{"remoteId":"...","modified":...,"deleted":true}],
+     *  "cursor":"...","until":1546300800000}. The cursor is only included when there may be another page.
+     *
+     * @param page
+     * @return
+     */
+    public static JsonBody changesResult(CourseChangePage page){
+        return (out) -> {
+            List<CourseHit> hits = page.hits;
+            out.write(RESULTS_START);
+            for(int i = 0; i < hits.size(); i++){
+                if(i > 0){
+                    out.write(',');
+                }
+                writeHit(hits.get(i).id, hits.get(i).source, null, out);
+            }
+            out.write(RESULTS_END);
+            if(page.cursor != null){
+                out.write(CURSOR);
+                out.write(GSON.toJson(page.cursor).getBytes(StandardCharsets.UTF_8));
+            }
+            out.write(UNTIL);
+            out.write(Long.toString(page.until).getBytes(StandardCharsets.UTF_8));
+            out.write('}');
+        };
+    }
+
+    private static void writeHit(String id, byte[] source, Double distance, OutputStream out) throws IOException{
+        out.write(REMOTE_ID);
+        out.write(GSON.toJson(id).getBytes(StandardCharsets.UTF_8));
+        if(distance != null){
+            out.write(DISTANCE);
+            out.write(GSON.toJson(distance).getBytes(StandardCharsets.UTF_8));
+        }
+
+        //Skip the sources opening brace, a separator is only needed if the source has members of its own.
+        int start = indexOf(source, '{', 0) + 1;
+        int next = skipWhitespace(source, start);
+        if(next < source.length && source[next] != '}'){
+            out.write(',');
+        }
+        out.write(source, start, source.length - start);
+    }
+
+    private static int indexOf(byte[] source, char c, int from){
+        for(int i = from; i < source.length; i++){
+            if(source[i] == c){
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Course source is not a JSON object.");
+    }
+
+    private static int skipWhitespace(byte[] source, int from){
+        int i = from;
+        while(i < source.length && Character.isWhitespace(source[i])){
+            i++;
+        }
+        return i;
+    }
+}
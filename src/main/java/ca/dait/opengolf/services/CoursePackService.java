@@ -0,0 +1,208 @@
+package ca.dait.opengolf.services;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Region packs for offline clients, see CoursePackWriter for the format.
+ *
+ * A pack is built by paging through the region's courses and written to ENV_PACK_DIR, named by the hash of its
+ * content. The pack of a region is reused for ENV_PACK_TTL (3600) seconds, so each node builds a region at most once
+ * per TTL however many clients download it, unless courses are written. Rebuilding an unchanged region produces the
+ * same pack name, clients holding it have nothing to download.
+ *
+ * Packs are files served as they are. Pack files not rebuilt for twice the TTL are deleted when a newer pack is
+ * written, as are the oldest files over ENV_PACK_MAX_FILES (1000).
+ *
+ * Writes through CourseService drop the packs of this node, the next request for a region rebuilds it. Other nodes
+ * keep serving their packs for up to ENV_PACK_TTL after a write. Caps: at most ENV_PACK_MAX_BUILDS (2) packs are
+ * built at once, requests needing another build fail fast with a ServiceUnavailableException.
+ */
+@Service
+public class CoursePackService {
+
+    private static final int PAGE_SIZE = 500;
+    private static final int PACK_CACHE_SIZE = 1000;
+    private static final String PACK_EXTENSION = ".pack";
+    private static final Pattern PACK_NAME = Pattern.compile("[0-9a-f]{32}");
+
+    private static final String METRIC_OPERATIONS = "opengolf.course";
+    private static final String OPERATION_PACK = "pack";
+
+    private static final Logger LOGGER = Logger.getLogger(CoursePackService.class.getName());
+
+    private final CourseRepository repository;
+    private final Path directory;
+    private final long packTtl;
+    private final int maxFiles;
+    private final Semaphore builds;
+    private final Cache<String, String> packs;
+    private final OperationTimer operationTimer;
+
+    @Autowired
+    public CoursePackService(CourseRepository repository,
+                             @Value("${ENV_PACK_DIR:${java.io.tmpdir}/opengolf-packs}") String directory,
+                             @Value("${ENV_PACK_TTL:3600}") long packTtl,
+                             @Value("${ENV_PACK_MAX_FILES:1000}") int maxFiles,
+                             @Value("${ENV_PACK_MAX_BUILDS:2}") int maxBuilds,
+                             MeterRegistry meterRegistry) throws IOException{
+        this.repository = repository;
+        this.directory = Files.createDirectories(Paths.get(directory));
+        this.packTtl = TimeUnit.SECONDS.toMillis(packTtl);
+        this.maxFiles = maxFiles;
+        this.builds = new Semaphore(maxBuilds);
+        this.packs = CacheBuilder.newBuilder()
+                                 .maximumSize(PACK_CACHE_SIZE)
+                                 .expireAfterWrite(packTtl, TimeUnit.SECONDS)
+                                 .build();
+        this.operationTimer = new OperationTimer(meterRegistry, METRIC_OPERATIONS);
+    }
+
+    /**
+     * Name of the current pack of the given region, built if there isn't one. Concurrent requests for a region wait
+     * on a single build.
+     *
+     * @param region
+     * @return
+     * @throws IOException
+     */
+    public String getPack(CourseRegion region) throws IOException{
+        try{
+            return this.packs.get(region.key(), () -> this.operationTimer.sync(OPERATION_PACK, () -> this.limitedBuild(region)));
+        }
+        catch(ExecutionException e){
+            if(e.getCause() instanceof IOException){
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        catch(UncheckedExecutionException e){
+            //Keeps the status of failures mapped by OpenGolfExceptionHandler, ie: ServiceUnavailableException
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    /**
+     * The pack file with the given name, null if there is none.
+     *
+     * @param name
+     * @return
+     */
+    public Path getPackFile(String name){
+        if(!PACK_NAME.matcher(name).matches()){
+            return null;
+        }
+        Path file = this.directory.resolve(name + PACK_EXTENSION);
+        return Files.isRegularFile(file) ? file : null;
+    }
+
+    /**
+     * Drops the packs of every region, they're rebuilt on their next request. Pack files are left for clients already
+     * sent to them.
+     */
+    public void invalidateAll(){
+        this.packs.invalidateAll();
+    }
+
+    private String limitedBuild(CourseRegion region) throws IOException{
+        if(!this.builds.tryAcquire()){
+            throw new ServiceUnavailableException("Too many course packs are being built, try again later.");
+        }
+        try{
+            return this.build(region);
+        }
+        finally{
+            this.builds.release();
+        }
+    }
+
+    private String build(CourseRegion region) throws IOException{
+        Path pack = Files.createTempFile(this.directory, "course", PACK_EXTENSION + ".tmp");
+        try(CoursePackWriter writer = new CoursePackWriter(this.directory)){
+            Object[] searchAfter = null;
+            do{
+                CourseRepository.Page page = CourseService.join(this.repository.region(region, PAGE_SIZE, searchAfter));
+                for(CourseHit hit : page.hits){
+                    writer.add(hit);
+                }
+                searchAfter = page.next;
+            }
+            while(searchAfter != null);
+
+            HashingOutputStream out = new HashingOutputStream(Hashing.murmur3_128(),
+                                                              new BufferedOutputStream(Files.newOutputStream(pack)));
+            try(OutputStream closing = out){
+                writer.writeTo(closing);
+            }
+
+            String name = out.hash().toString();
+            Path file = this.directory.resolve(name + PACK_EXTENSION);
+            Files.move(pack, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.log(Level.INFO, "Built course pack " + name + " for " + region.key());
+            this.deleteStale();
+            return name;
+        }
+        finally{
+            Files.deleteIfExists(pack);
+        }
+    }
+
+    /**
+     * Deletes the pack files not rebuilt for twice the TTL, then the oldest files over the maximum. Clients can still
+     * be sent to a pack up to a TTL after it's replaced, unless it's deleted for being over the maximum: regions
+     * still holding it are dropped.
+     */
+    private void deleteStale(){
+        long expired = System.currentTimeMillis() - 2 * this.packTtl;
+        Map<Path, Long> kept = new HashMap<>();
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, "*" + PACK_EXTENSION)){
+            for(Path file : files){
+                long modified = Files.getLastModifiedTime(file).toMillis();
+                if(modified < expired){
+                    Files.deleteIfExists(file);
+                }
+                else{
+                    kept.put(file, modified);
+                }
+            }
+            List<Path> oldest = new ArrayList<>(kept.keySet());
+            oldest.sort(Comparator.comparing(kept::get));
+            for(Path file : oldest.subList(0, Math.max(0, oldest.size() - this.maxFiles))){
+                String fileName = file.getFileName().toString();
+                String name = fileName.substring(0, fileName.length() - PACK_EXTENSION.length());
+                this.packs.asMap().values().removeIf(name::equals);
+                Files.deleteIfExists(file);
+            }
+        }
+        catch(IOException e){
+            LOGGER.log(Level.WARNING, "Failed to delete stale course packs", e);
+        }
+    }
+}
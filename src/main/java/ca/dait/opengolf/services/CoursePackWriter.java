@@ -0,0 +1,145 @@
+package ca.dait.opengolf.services;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes a region pack: the courses of a region in a compact binary form for offline clients.
+ *
+ * Integers are unsigned LEB128 varints, signed ones are zigzag encoded first. Strings are stored once in a table and
+ * referenced by index.
+ *
+ *  magic       "OGP" 0x01
+ *  strings     count, then per string: UTF-8 byte length, bytes
+ *  fields      count, then the string index of each field name (see CourseHit.SUMMARY_FIELDS)
+ *  courses     count, then per course:
+ *    id          string index
+ *    modified    signed, epoch milliseconds, 0 if unknown
+ *    values      per field: string index + 1, 0 if absent
+ *    holes       count, then the number of holes without a position and the index of each, then per hole with a
+ *                position: signed lat and lon in microdegrees (~0.1m), each the difference from the previous one of
+ *                the course (the first from 0,0)
+ *
+ * Courses are streamed to a spill file as they're added, the string table is only complete once every course is, so
+ * the pack is assembled by {@link #writeTo(OutputStream)}.
+ */
+class CoursePackWriter implements Closeable {
+
+    private static final byte[] MAGIC = new byte[]{'O', 'G', 'P', 1};
+    private static final double MICRODEGREES = 1e6;
+
+    private final Map<String, Integer> strings = new LinkedHashMap<>();
+    private final int[] fields;
+    private final Path spill;
+    private final OutputStream courses;
+    private int count;
+
+    CoursePackWriter(Path directory) throws IOException{
+        this.fields = new int[CourseHit.SUMMARY_FIELDS.length];
+        for(int i = 0; i < this.fields.length; i++){
+            this.fields[i] = this.string(CourseHit.SUMMARY_FIELDS[i]);
+        }
+        this.spill = Files.createTempFile(directory, "course", ".spill");
+        this.courses = new BufferedOutputStream(Files.newOutputStream(this.spill));
+    }
+
+    void add(CourseHit hit) throws IOException{
+        JsonObject document = new JsonParser().parse(CourseHit.reader(hit.source)).getAsJsonObject();
+
+        writeVarint(this.courses, this.string(hit.id));
+        JsonElement modified = document.get(CourseRepository.FIELD_MODIFIED);
+        writeSigned(this.courses, (modified == null || modified.isJsonNull()) ? 0 : modified.getAsLong());
+        for(String field : CourseHit.SUMMARY_FIELDS){
+            JsonElement value = document.get(field);
+            writeVarint(this.courses, (value == null || value.isJsonNull()) ? 0 : this.string(value.getAsString()) + 1);
+        }
+
+        HoleGeometry holes = hit.geometry;
+        writeVarint(this.courses, holes.size());
+        int unlocated = 0;
+        for(int i = 0; i < holes.size(); i++){
+            unlocated += holes.located(i) ? 0 : 1;
+        }
+        writeVarint(this.courses, unlocated);
+        for(int i = 0; i < holes.size(); i++){
+            if(!holes.located(i)){
+                writeVarint(this.courses, i);
+            }
+        }
+        long lat = 0;
+        long lon = 0;
+        for(int i = 0; i < holes.size(); i++){
+            if(!holes.located(i)){
+                continue;
+            }
+            long holeLat = Math.round(holes.lat(i) * MICRODEGREES);
+            long holeLon = Math.round(holes.lon(i) * MICRODEGREES);
+            writeSigned(this.courses, holeLat - lat);
+            writeSigned(this.courses, holeLon - lon);
+            lat = holeLat;
+            lon = holeLon;
+        }
+        this.count++;
+    }
+
+    /**
+     * Writes the pack, once every course is added.
+     *
+     * @param out
+     * @throws IOException
+     */
+    void writeTo(OutputStream out) throws IOException{
+        this.courses.flush();
+
+        out.write(MAGIC);
+        writeVarint(out, this.strings.size());
+        for(String string : this.strings.keySet()){
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, bytes.length);
+            out.write(bytes);
+        }
+        writeVarint(out, this.fields.length);
+        for(int field : this.fields){
+            writeVarint(out, field);
+        }
+        writeVarint(out, this.count);
+        Files.copy(this.spill, out);
+    }
+
+    @Override
+    public void close() throws IOException{
+        try{
+            this.courses.close();
+        }
+        finally{
+            Files.deleteIfExists(this.spill);
+        }
+    }
+
+    private int string(String value){
+        return this.strings.computeIfAbsent(value, (key) -> this.strings.size());
+    }
+
+    private static void writeSigned(OutputStream out, long value) throws IOException{
+        writeVarint(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static void writeVarint(OutputStream out, long value) throws IOException{
+        while((value & ~0x7FL) != 0){
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
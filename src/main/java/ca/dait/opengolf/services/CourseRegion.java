@@ -0,0 +1,130 @@
+package ca.dait.opengolf.services;
+
+import com.google.common.base.Strings;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.Collections;
+import java.util.Locale;
+
+/**
+ * The courses of a region: either those with a hole inside a bounding box, or those in a country and/or state.
+ *
+ * Bounding boxes are snapped outward to a BBOX_GRID (0.5) degree grid, so nearby boxes are the same region and share
+ * a pack. A region can hold courses just outside the box it was requested for.
+ */
+public class CourseRegion {
+
+    private static final String FIELD_COUNTRY = "country";
+    private static final String FIELD_STATE = "state";
+    private static final double BBOX_GRID = 0.5;
+
+    public final double[] bbox;
+    public final String country;
+    public final String state;
+
+    private CourseRegion(double[] bbox, String country, String state){
+        this.bbox = bbox;
+        this.country = country;
+        this.state = state;
+    }
+
+    /**
+     * @param bbox minLat,minLon,maxLat,maxLon, snapped outward to the grid.
+     * @param country
+     * @param state
+     * @return
+     */
+    public static CourseRegion of(String bbox, String country, String state){
+        country = normalize(country);
+        state = normalize(state);
+        if((bbox == null) == (country == null && state == null)){
+            throw new BadRequestException("A region is either a bbox or a country and/or state.");
+        }
+        if(bbox == null){
+            return new CourseRegion(null, country, state);
+        }
+
+        String[] corners = bbox.split(",");
+        double[] box = new double[4];
+        try{
+            if(corners.length != box.length){
+                throw new NumberFormatException();
+            }
+            for(int i = 0; i < box.length; i++){
+                box[i] = Double.parseDouble(corners[i].trim());
+            }
+        }
+        catch(NumberFormatException e){
+            throw new BadRequestException("bbox must be minLat,minLon,maxLat,maxLon.");
+        }
+        if(box[0] > box[2] || box[1] > box[3] || box[0] < -90 || box[2] > 90 || box[1] < -180 || box[3] > 180){
+            throw new BadRequestException("bbox must be minLat,minLon,maxLat,maxLon.");
+        }
+        for(int i = 0; i < box.length; i++){
+            //+ 0.0 turns -0.0 into 0.0, they'd be different keys.
+            box[i] = ((i < 2) ? Math.floor(box[i] / BBOX_GRID) : Math.ceil(box[i] / BBOX_GRID)) * BBOX_GRID + 0.0;
+        }
+        return new CourseRegion(box, null, null);
+    }
+
+    /**
+     * Identifies the region, regions with the same key hold the same courses.
+     *
+     * @return
+     */
+    public String key(){
+        if(this.bbox != null){
+            return String.format(Locale.ROOT, "bbox:%.1f,%.1f,%.1f,%.1f", this.bbox[0], this.bbox[1], this.bbox[2], this.bbox[3]);
+        }
+        return "country:" + Strings.nullToEmpty(this.country) + "|state:" + Strings.nullToEmpty(this.state);
+    }
+
+    /**
+     * Whether the region holds the given course. Country and state match like ElasticSearch's match_phrase: the
+     * region's words appear, in order and next to each other, among the field's words, ignoring case and punctuation.
+     *
+     * @param document Course document, or its summary.
+     * @param geometry
+     * @return
+     */
+    public boolean contains(JsonObject document, HoleGeometry geometry){
+        if(this.bbox != null){
+            for(int i = 0; i < geometry.size(); i++){
+                double lat = geometry.lat(i);
+                double lon = geometry.lon(i);
+                if(lat >= this.bbox[0] && lat <= this.bbox[2] && lon >= this.bbox[1] && lon <= this.bbox[3]){
+                    return true;
+                }
+            }
+            return false;
+        }
+        return matches(document, FIELD_COUNTRY, this.country) && matches(document, FIELD_STATE, this.state);
+    }
+
+    private static boolean matches(JsonObject document, String field, String value){
+        if(value == null){
+            return true;
+        }
+        JsonElement element = document.get(field);
+        if(element == null || element.isJsonNull()){
+            return false;
+        }
+        return Collections.indexOfSubList(TermIndex.tokenize(element.getAsString()), TermIndex.tokenize(value)) >= 0;
+    }
+
+    /**
+     * The words of a country or state, as ElasticSearch analyzes them, so phrases matching the same courses share a
+     * key.
+     *
+     * @param value
+     * @return
+     */
+    private static String normalize(String value){
+        if(value == null){
+            return null;
+        }
+        String normalized = String.join(" ", TermIndex.tokenize(value));
+        return normalized.isEmpty() ? null : normalized;
+    }
+}
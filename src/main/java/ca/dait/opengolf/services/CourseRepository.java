@@ -0,0 +1,164 @@
+package ca.dait.opengolf.services;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Storage and search of raw course documents. CourseService layers the caches, metrics and Course mapping on top.
+ *
+ * Implementations are selected with ENV_COURSE_REPOSITORY: elasticsearch (default) or embedded, see
+ * {@link ElasticsearchCourseRepository} and {@link EmbeddedCourseRepository}.
+ *
+ * Search pages are sorted by score, distance to the nearest hole (when co-ordinates are given) then document ID. The
+ * sort key of a page's last hit is returned with it and passed back as searchAfter to read the next page. In a
+ * located search a course without holes scores 0, so it sorts last.
+ *
+ * Documents written through CourseService carry the time they were last modified (FIELD_MODIFIED), deleting a course
+ * leaves a tombstone with the time of the delete, see {@link CourseHit#tombstone(String, long)}. Change pages are
+ * sorted by modification time then document ID and paged the same way as searches.
+ */
+public interface CourseRepository {
+
+    String PROPERTY = "ENV_COURSE_REPOSITORY";
+
+    /**
+     * Fields matched by the search term.
+     */
+    String[] SEARCH_FIELDS = new String[]{"facilityName", "nickName", "city", "state", "country"};
+
+    /**
+     * Scale of the distance decay applied to the score of a located search: a course this far from the search
+     * co-ordinates scores half as much as one at them.
+     */
+    int SEARCH_DISTANCE_SCALE = 2000;
+
+    /**
+     * Modification time of a course or tombstone, epoch milliseconds.
+     */
+    String FIELD_MODIFIED = "modified";
+
+    /**
+     * Get the course document with the given ID, null if it doesn't exist.
+     *
+     * @param id
+     * @return
+     */
+    CompletableFuture<CourseHit> get(String id);
+
+    /**
+     * Get the course documents with the given IDs in a single request.
+     *
+     * @param ids
+     * @return Hits by ID, courses that don't exist are left out.
+     */
+    CompletableFuture<Map<String, CourseHit>> getAll(Collection<String> ids);
+
+    /**
+     * @param searchTerm Normalized search term, null to match every course.
+     * @param lat
+     * @param lon
+     * @param size
+     * @param searchAfter Sort key of the last hit of the previous page, null for the first page.
+     * @return
+     */
+    CompletableFuture<Page> search(String searchTerm, Double lat, Double lon, int size, Object[] searchAfter);
+
+    /**
+     * Longest a write can take, from the time its documents are stamped, to be returned by
+     * {@link #changes(Long, long, int, Object[])}. The change feed's upper bound trails the current time by at least
+     * this much, so a sync never moves past a write that isn't visible yet.
+     *
+     * @return Milliseconds
+     */
+    long changesLag();
+
+    /**
+     * Courses and tombstones modified in the given window, see the class comment. Courses written before modification
+     * times were kept have none, they sort first and are only included when since is null.
+     *
+     * @param since Exclusive lower bound of the modification time, null for every change.
+     * @param until Inclusive upper bound of the modification time.
+     * @param size
+     * @param searchAfter Sort key of the last change of the previous page, null for the first page.
+     * @return
+     */
+    CompletableFuture<Page> changes(Long since, long until, int size, Object[] searchAfter);
+
+    /**
+     * The courses of a region, sorted by ID.
+     *
+     * @param region
+     * @param size
+     * @param searchAfter Sort key of the last course of the previous page, null for the first page.
+     * @return
+     */
+    CompletableFuture<Page> region(CourseRegion region, int size, Object[] searchAfter);
+
+    /**
+     * @param source Course document as JSON.
+     * @return ID of the new course.
+     * @throws IOException
+     */
+    String add(String source) throws IOException;
+
+    /**
+     * Indexes the given documents, recording the outcome of each in the result.
+     *
+     * @param documents
+     * @param result
+     * @throws IOException
+     */
+    void bulkIndex(Iterator<CourseDocument> documents, CourseBulkResult result) throws IOException;
+
+    /**
+     * Merges the given partial document into the course with the given ID.
+     *
+     * @param id
+     * @param source
+     * @throws IOException
+     */
+    void update(String id, String source) throws IOException;
+
+    /**
+     * Deletes the course with the given ID (if exists) and records a tombstone for it. Nothing is recorded if the
+     * course doesn't exist.
+     *
+     * @param id
+     * @param modified Time of the delete, epoch milliseconds.
+     * @throws IOException
+     */
+    void delete(String id, long modified) throws IOException;
+
+    /**
+     * Creates the course index with the given mapping if it doesn't exist yet.
+     *
+     * @param mapping Index mapping, see es_bootstrap_json/coursemapping.json
+     * @return true if the index was created.
+     * @throws IOException
+     */
+    boolean createIndex(String mapping) throws IOException;
+
+    /**
+     * Utilization of the connections to the course store, empty if it isn't remote.
+     *
+     * @return
+     */
+    Map<String, Integer> getConnectionStats();
+
+    /**
+     * A page of search hits and the sort key of its last hit, null when this is the last page.
+     */
+    class Page {
+        public final List<CourseHit> hits;
+        public final Object[] next;
+
+        public Page(List<CourseHit> hits, Object[] next){
+            this.hits = hits;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package ca.dait.opengolf.services;
+
+import java.util.List;
+
+/**
+ * A page of search hits and the cursor to request the page after it, null when this is the last page.
+ */
+public class CourseSearchPage {
+    public final List<CourseHit> hits;
+    public final String cursor;
+
+    public CourseSearchPage(List<CourseHit> hits, String cursor){
+        this.hits = hits;
+        this.cursor = cursor;
+    }
+}
@@ -1,171 +1,508 @@
 package ca.dait.opengolf.services;
 
-import ca.dait.opengolf.awslabs.AWSRequestSigningApacheInterceptor;
 import ca.dait.opengolf.entities.course.Course;
-import ca.dait.opengolf.entities.course.CourseSearchResult;
-import com.amazonaws.auth.AWS4Signer;
-import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.io.BaseEncoding;
 import com.google.gson.Gson;
-import org.apache.http.HttpHost;
-import org.apache.http.HttpRequestInterceptor;
-import org.elasticsearch.action.delete.DeleteRequest;
-import org.elasticsearch.action.get.GetRequest;
-import org.elasticsearch.action.get.GetResponse;
-import org.elasticsearch.action.index.IndexRequest;
-import org.elasticsearch.action.index.IndexResponse;
-import org.elasticsearch.action.search.SearchRequest;
-import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.action.update.UpdateRequest;
-import org.elasticsearch.client.RequestOptions;
-import org.elasticsearch.client.RestClient;
-import org.elasticsearch.client.RestHighLevelClient;
-import org.elasticsearch.common.document.DocumentField;
-import org.elasticsearch.common.xcontent.XContentType;
-import org.elasticsearch.index.query.FuzzyQueryBuilder;
-import org.elasticsearch.index.query.QueryBuilder;
-import org.elasticsearch.index.query.QueryBuilders;
-import org.elasticsearch.index.query.functionscore.ExponentialDecayFunctionBuilder;
-import org.elasticsearch.index.search.MatchQuery;
-import org.elasticsearch.script.Script;
-import org.elasticsearch.search.builder.SearchSourceBuilder;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.apache.lucene.geo.Rectangle;
+import org.elasticsearch.common.geo.GeoHashUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.util.Arrays;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 /**
- * Interface to the course database in ElasticSearch.
+ * Interface to the course database, stored in a {@link CourseRepository}.
+ *
+ * Course documents fetched by ID are held in a bounded in-process cache, entries are invalidated when a course is
+ * updated or deleted through this service and otherwise expire after the configured TTL.
+ *
+ * Search results are cached by normalized search term and the geohash cell containing the search co-ordinates. Any
+ * write through this service clears the search cache and the region packs of this node, see CoursePackService.
+ *
+ * Course documents are kept as raw source bytes so they can be written to the response as they are, see CourseJson.
+ *
+ * Every write through this service stamps the documents it writes, or the tombstone of a deleted course, with a
+ * modification time that only moves forward on this node. Clients sync by reading the changes since the until value
+ * of their previous sync, see {@link #changesAsync(Long, Integer, String)}.
  */
 @Service
 public class CourseService {
 
-    private static final String SIGNER_SERVICE_NAME = "es";
+    private static final int SEARCH_MAX_ROWS = 50;
+    private static final int GET_MAX_IDS = 100;
+    private static final int CHANGES_MAX_ROWS = 500;
 
-    private static final String SEARCH_INDEX_NAME = "opengolf";
-    private static final String SEARCH_TYPE_NAME = "course";
-    private static final String SEARCH_FIELD_HOLES = "holes";
+    private static final String FIELD_REMOTE_ID = "remoteId";
+    private static final String FIELD_DISTANCE = "distance";
 
-    private static final String SEARCH_SCRIPT_FIELD_DISTANCE = "distance";
-    private static final String SEARCH_SCRIPT_DISTANCE = "doc['%s'].arcDistance(%f, %f)";
+    private static final String CACHE_STATS_GET = "course.get";
+    private static final String CACHE_STATS_SEARCH = "course.search";
+    private static final String CACHE_KEY_SEPARATOR = "|";
 
-    private static final String SEARCH_DISTANCE_SCALE = "2km";
-    private static final String SEARCH_LAT = "lat";
-    private static final String SEARCH_LON = "lon";
+    private static final String METRIC_OPERATIONS = "opengolf.course";
+    private static final String METRIC_SEARCH_RESULTS = "opengolf.course.search.results";
 
-    private static final int SEARCH_START = 0;
-    private static final int SEARCH_MAX_ROWS = 50;
+    private static final String OPERATION_GET = "get";
+    private static final String OPERATION_MULTI_GET = "mget";
+    private static final String OPERATION_SEARCH = "search";
+    private static final String OPERATION_ADD = "add";
+    private static final String OPERATION_BULK = "bulk";
+    private static final String OPERATION_UPDATE = "update";
+    private static final String OPERATION_DELETE = "delete";
+    private static final String OPERATION_CHANGES = "changes";
+
+    //Sort values can be infinite, ie: the distance to a course without holes. They're read back as the string
+    //"Infinity", which ElasticSearch parses like a number.
+    private static final Gson CURSOR_GSON = new GsonBuilder().serializeSpecialFloatingPointValues().create();
+
+    private final CourseRepository repository;
 
-    private static final String[] SEARCH_RESULT_INCLUDE_FIELDS = new String[]{"facilityName", "nickName", "city", "state", "country"};
+    private final Cache<String, Optional<CourseHit>> courseCache;
+    private final Cache<String, CourseSearchPage> searchCache;
+    private final int searchCachePrecision;
 
-    private RestHighLevelClient searchClient;
+    private final long changesDelay;
+    private final AtomicLong clock = new AtomicLong();
+
+    private final OperationTimer operationTimer;
+    private final DistributionSummary searchResults;
 
     @Autowired
     private Gson gson;
 
     @Autowired
-    public CourseService(@Value("${ENV_SEARCH_HOST}") String host,
-                         @Value("${ENV_SEARCH_PORT}") Integer port,
-                         @Value("${ENV_SEARCH_SCHEME}") String scheme,
-                         @Value("${AWS_REGION}") String region){
+    private CoursePackService coursePackService;
+
+    @Autowired
+    public CourseService(CourseRepository repository,
+                         @Value("${ENV_COURSE_CACHE_SIZE:1000}") long courseCacheSize,
+                         @Value("${ENV_COURSE_CACHE_TTL:300}") long courseCacheTtl,
+                         @Value("${ENV_SEARCH_CACHE_SIZE:1000}") long searchCacheSize,
+                         @Value("${ENV_SEARCH_CACHE_TTL:300}") long searchCacheTtl,
+                         @Value("${ENV_SEARCH_CACHE_PRECISION:6}") int searchCachePrecision,
+                         @Value("${ENV_CHANGES_DELAY:5}") long changesDelay,
+                         MeterRegistry meterRegistry){
+
+        this.repository = repository;
 
-        AWS4Signer signer = new AWS4Signer();
-        signer.setServiceName(SIGNER_SERVICE_NAME);
-        signer.setRegionName(region);
+        this.courseCache = CacheBuilder.newBuilder()
+                                        .maximumSize(courseCacheSize)
+                                        .expireAfterWrite(courseCacheTtl, TimeUnit.SECONDS)
+                                        .recordStats()
+                                        .build();
 
-        HttpRequestInterceptor interceptor = new AWSRequestSigningApacheInterceptor(SIGNER_SERVICE_NAME, signer, new DefaultAWSCredentialsProviderChain());
+        this.searchCache = CacheBuilder.newBuilder()
+                                        .maximumSize(searchCacheSize)
+                                        .expireAfterWrite(searchCacheTtl, TimeUnit.SECONDS)
+                                        .recordStats()
+                                        .build();
+        this.searchCachePrecision = searchCachePrecision;
+        this.changesDelay = TimeUnit.SECONDS.toMillis(changesDelay);
 
-        this.searchClient = new RestHighLevelClient(RestClient.builder(new HttpHost(host, port, scheme))
-                .setHttpClientConfigCallback(callback -> callback.addInterceptorLast(interceptor))
-        );
+        this.operationTimer = new OperationTimer(meterRegistry, METRIC_OPERATIONS);
+        this.searchResults = DistributionSummary.builder(METRIC_SEARCH_RESULTS)
+                                                .baseUnit("courses")
+                                                .register(meterRegistry);
+        GuavaCacheMetrics.monitor(meterRegistry, this.courseCache, CACHE_STATS_GET);
+        GuavaCacheMetrics.monitor(meterRegistry, this.searchCache, CACHE_STATS_SEARCH);
     }
 
     /**
-     * Get course by given ID.
+     * Get the raw course document by given ID, null if it doesn't exist.
      *
      * @param id
      * @return
-     * @throws IOException
      */
-    public Course get(String id) throws IOException{
-        GetRequest getRequest = new GetRequest(SEARCH_INDEX_NAME, SEARCH_TYPE_NAME, id);
-        GetResponse response = this.searchClient.get(getRequest, RequestOptions.DEFAULT);
-        return (response.isExists()) ? this.gson.fromJson(response.getSourceAsString(), Course.class) : null;
+    public CompletableFuture<CourseHit> getHitAsync(String id){
+        return this.operationTimer.async(OPERATION_GET, () -> this.loadHit(id));
+    }
+
+    private CompletableFuture<CourseHit> loadHit(String id){
+        Optional<CourseHit> cached = this.courseCache.getIfPresent(id);
+        if(cached != null){
+            return CompletableFuture.completedFuture(cached.orElse(null));
+        }
+
+        return this.repository.get(id)
+                    .thenApply((hit) -> {
+                        this.courseCache.put(id, Optional.ofNullable(hit));
+                        return hit;
+                    });
+    }
+
+    /**
+     * Get the raw course documents with the given IDs, in the order given. Courses in the course cache are served from
+     * it, the rest are read with a single multi get and cached, missing courses included. Duplicate IDs are collapsed.
+     * Caps: at most GET_MAX_IDS (100) IDs per request.
+     *
+     * @param ids
+     * @return Hits by ID, null for courses that don't exist.
+     */
+    public CompletableFuture<Map<String, CourseHit>> getHitsAsync(List<String> ids){
+        Set<String> unique = new LinkedHashSet<>(ids);
+        if(unique.isEmpty() || unique.size() > GET_MAX_IDS){
+            throw new BadRequestException("Between 1 and " + GET_MAX_IDS + " course IDs must be given.");
+        }
+        return this.operationTimer.async(OPERATION_MULTI_GET, () -> this.loadHits(unique));
+    }
+
+    private CompletableFuture<Map<String, CourseHit>> loadHits(Set<String> ids){
+        Map<String, CourseHit> hits = new LinkedHashMap<>();
+        List<String> misses = new ArrayList<>();
+        for(String id : ids){
+            Optional<CourseHit> cached = this.courseCache.getIfPresent(id);
+            if(cached == null){
+                misses.add(id);
+            }
+            hits.put(id, (cached == null) ? null : cached.orElse(null));
+        }
+        if(misses.isEmpty()){
+            return CompletableFuture.completedFuture(hits);
+        }
+        return this.repository.getAll(misses)
+                    .thenApply((found) -> {
+                        for(String id : misses){
+                            CourseHit hit = found.get(id);
+                            this.courseCache.put(id, Optional.ofNullable(hit));
+                            hits.put(id, hit);
+                        }
+                        return hits;
+                    });
     }
 
     /**
-     * TODO: Tune search.
+     * Hit, miss and eviction counters of the course caches, keyed by cache name.
      *
-     * Search online course database. Provides a composite search containing both an optional search term and optional
-     * geo_point coordinates.
+     * @return
+     */
+    public Map<String, CacheStats> getCacheStats(){
+        return ImmutableMap.of(CACHE_STATS_GET, this.courseCache.stats(),
+                               CACHE_STATS_SEARCH, this.searchCache.stats());
+    }
+
+    /**
+     * Utilization of the connections to the course repository, see {@link CourseRepository#getConnectionStats()}.
+     *
+     * @return
+     */
+    public Map<String, Integer> getConnectionStats(){
+        return this.repository.getConnectionStats();
+    }
+
+    /**
+     * Search returning a page of raw course documents, see
+     * {@link CourseJson#searchResult(CourseSearchPage, Double, Double, boolean)} to write them as a search result.
+     *
+     * Pages are read with search_after on a stable sort: score, nearest hole distance (if co-ordinates are given),
+     * then document ID. The cursor of a page is the sort key of its last hit, so deep pages cost the same as the
+     * first.
+     *
+     * Pages are cached per search term, geohash cell, page size and cursor, the query itself is run from the centre of
+     * the cell. The distance to the nearest hole is computed for the callers exact co-ordinates when the page is
+     * written, see CourseJson. Caps: a page holds at most SEARCH_MAX_ROWS (50) hits, which is also the default page
+     * size.
      *
      * @param searchTerm
      * @param lat
      * @param lon
+     * @param size Page size, null for the maximum.
+     * @param cursor Cursor returned with the previous page, null for the first page.
+     * @return
+     */
+    public CompletableFuture<CourseSearchPage> searchPageAsync(String searchTerm, Double lat, Double lon,
+                                                               Integer size, String cursor){
+        return this.operationTimer.async(OPERATION_SEARCH, () -> this.loadPage(searchTerm, lat, lon, size, cursor))
+                    .thenApply((page) -> {
+                        this.searchResults.record(page.hits.size());
+                        return page;
+                    });
+    }
+
+    private CompletableFuture<CourseSearchPage> loadPage(String searchTerm, Double lat, Double lon,
+                                                         Integer size, String cursor){
+        int pageSize = (size == null) ? SEARCH_MAX_ROWS : size;
+        if(pageSize < 1 || pageSize > SEARCH_MAX_ROWS){
+            throw new BadRequestException("Page size must be between 1 and " + SEARCH_MAX_ROWS + ".");
+        }
+        Object[] searchAfter = (cursor == null) ? null : this.decodeCursor(cursor);
+
+        String term = normalize(searchTerm);
+        boolean located = (lat != null && lon != null);
+        String cell = located ? GeoHashUtils.stringEncode(lon, lat, this.searchCachePrecision) : "";
+        String key = Joiner.on(CACHE_KEY_SEPARATOR).join(Strings.nullToEmpty(term), cell, pageSize, Strings.nullToEmpty(cursor));
+
+        CourseSearchPage cached = this.searchCache.getIfPresent(key);
+        if(cached != null){
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<CourseSearchPage> page;
+        if(located){
+            Rectangle bounds = GeoHashUtils.bbox(cell);
+            page = this.fetch(term, (bounds.minLat + bounds.maxLat) / 2, (bounds.minLon + bounds.maxLon) / 2,
+                              pageSize, searchAfter);
+        }
+        else{
+            page = this.fetch(term, null, null, pageSize, searchAfter);
+        }
+        return page.thenApply((fetched) -> {
+            this.searchCache.put(key, fetched);
+            return fetched;
+        });
+    }
+
+    private CompletableFuture<CourseSearchPage> fetch(String searchTerm, Double lat, Double lon,
+                                                      int size, Object[] searchAfter){
+
+        return this.repository.search(searchTerm, lat, lon, size, searchAfter)
+                    .thenApply((page) -> new CourseSearchPage(page.hits,
+                                                              (page.next == null) ? null : this.encodeCursor(page.next)));
+    }
+
+    /**
+     * Courses added, updated or deleted since the given time, oldest first. Deleted courses are returned as
+     * tombstones, see {@link CourseHit#tombstone(String, long)}, and a course deleted then added again may be
+     * returned as both: changes must be applied in order.
+     *
+     * A sync covers the changes up to the repository's write lag (see {@link CourseRepository#changesLag()}) plus
+     * ENV_CHANGES_DELAY (5) seconds ago, so writes that aren't searchable yet or were stamped by a node with a
+     * slightly slower clock are picked up by the next sync rather than skipped. The upper bound is returned with every
+     * page and carried in its cursor. Caps: a page holds at most CHANGES_MAX_ROWS (500) changes, which is also the
+     * default page size.
+     *
+     * @param since until value of the previous sync, null for every course.
+     * @param size Page size, null for the maximum.
+     * @param cursor Cursor returned with the previous page, null for the first page.
+     * @return
+     */
+    public CompletableFuture<CourseChangePage> changesAsync(Long since, Integer size, String cursor){
+        return this.operationTimer.async(OPERATION_CHANGES, () -> this.loadChanges(since, size, cursor));
+    }
+
+    private CompletableFuture<CourseChangePage> loadChanges(Long since, Integer size, String cursor){
+        int pageSize = (size == null) ? CHANGES_MAX_ROWS : size;
+        if(pageSize < 1 || pageSize > CHANGES_MAX_ROWS){
+            throw new BadRequestException("Page size must be between 1 and " + CHANGES_MAX_ROWS + ".");
+        }
+
+        long until;
+        Long from;
+        Object[] searchAfter;
+        if(cursor == null){
+            until = System.currentTimeMillis() - this.changesDelay - this.repository.changesLag();
+            from = since;
+            searchAfter = null;
+        }
+        else{
+            //[until, modified, id], the sort key already bounds the page from below.
+            Object[] values = this.decodeCursor(cursor);
+            if(values.length != 3 || !(values[0] instanceof Number) || !(values[1] instanceof Number) || values[2] == null){
+                throw new BadRequestException("Invalid cursor.");
+            }
+            until = ((Number) values[0]).longValue();
+            from = null;
+            searchAfter = new Object[]{((Number) values[1]).longValue(), values[2]};
+        }
+
+        return this.repository.changes(from, until, pageSize, searchAfter)
+                    .thenApply((page) -> new CourseChangePage(page.hits,
+                                            (page.next == null) ? null :
+                                                    this.encodeCursor(new Object[]{until, page.next[0], page.next[1]}),
+                                            until));
+    }
+
+    /**
+     * Next modification time: the current time, or one past the last time handed out if the clock hasn't moved or
+     * went backwards.
+     *
+     * @return
+     */
+    private long modified(){
+        long now = System.currentTimeMillis();
+        return this.clock.updateAndGet((last) -> Math.max(now, last + 1));
+    }
+
+    /**
+     * Serializes a course document stamped with the next modification time.
+     *
+     * @param course
+     * @return
+     */
+    private String toSource(Course course){
+        JsonObject document = this.gson.toJsonTree(course).getAsJsonObject();
+        document.addProperty(CourseRepository.FIELD_MODIFIED, this.modified());
+        return this.gson.toJson(document);
+    }
+
+    private String encodeCursor(Object[] sortValues){
+        return BaseEncoding.base64Url().omitPadding().encode(CURSOR_GSON.toJson(sortValues).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Object[] decodeCursor(String cursor){
+        try{
+            String json = new String(BaseEncoding.base64Url().omitPadding().decode(cursor), StandardCharsets.UTF_8);
+            Object[] sortValues = CURSOR_GSON.fromJson(json, Object[].class);
+            if(sortValues == null || sortValues.length == 0){
+                throw new BadRequestException("Invalid cursor.");
+            }
+            return sortValues;
+        }
+        catch(IllegalArgumentException | JsonParseException e){
+            throw new BadRequestException("Invalid cursor.", e);
+        }
+    }
+
+    /**
+     * Search terms that only differ in case and whitespace map to the same cache entry. An empty term matches everything.
+     *
+     * @param searchTerm
+     * @return
+     */
+    private static String normalize(String searchTerm){
+        if(searchTerm == null){
+            return null;
+        }
+        String term = searchTerm.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        return term.isEmpty() ? null : term;
+    }
+
+    /**
+     * Waits on the given future, unwrapping IOExceptions and runtime exceptions thrown while completing it.
+     *
+     * @param future
      * @return
      * @throws IOException
      */
-    public CourseSearchResult search(String searchTerm, Double lat, Double lon) throws IOException{
-
-        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-        searchSourceBuilder.from(SEARCH_START);
-        searchSourceBuilder.size(SEARCH_MAX_ROWS);
-        searchSourceBuilder.fetchSource(true);
-
-        QueryBuilder query = (searchTerm == null) ? QueryBuilders.matchAllQuery() :
-                                    QueryBuilders.multiMatchQuery(searchTerm, SEARCH_RESULT_INCLUDE_FIELDS)
-                                                .fuzziness(FuzzyQueryBuilder.DEFAULT_FUZZINESS)
-                                                .zeroTermsQuery(MatchQuery.ZeroTermsQuery.ALL);
-
-        //If co-ordinates are included, wrap the search in a distance scorer
-        if(lat != null && lon != null){
-            query = QueryBuilders.functionScoreQuery(query,
-                    new ExponentialDecayFunctionBuilder(SEARCH_FIELD_HOLES,
-                            ImmutableMap.of(SEARCH_LAT, lat, SEARCH_LON, lon), SEARCH_DISTANCE_SCALE, null)
-            );
-
-            searchSourceBuilder.scriptField(SEARCH_SCRIPT_FIELD_DISTANCE,
-                    new Script(String.format(SEARCH_SCRIPT_DISTANCE, SEARCH_FIELD_HOLES, lat, lon)));
-        }
-
-        SearchResponse response = this.searchClient.search(new SearchRequest().source(searchSourceBuilder.query(query)),
-                                                           RequestOptions.DEFAULT);
-
-        return new CourseSearchResult(Arrays.stream(response.getHits().getHits())
-                                            .map((hit) -> {
-                                                DocumentField field = hit.getFields().get(SEARCH_SCRIPT_FIELD_DISTANCE);
-                                                if(field != null){
-                                                    Double distance = field.getValue();
-                                                    Course course = this.gson.fromJson(hit.getSourceAsString(), Course.class);
-                                                    course.setRemoteId(hit.getId());
-                                                    course.setDistance(distance);
-                                                    return course;
-                                                }
-                                                else{
-                                                    Course course = this.gson.fromJson(hit.getSourceAsString(), Course.class);
-                                                    course.setRemoteId(hit.getId());
-                                                    return course;
-                                                }
-                                            })
-                                            .toArray(Course[]::new));
+    static <V> V join(CompletableFuture<V> future) throws IOException{
+        try{
+            return future.get();
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        catch(ExecutionException e){
+            if(e.getCause() instanceof IOException){
+                throw (IOException) e.getCause();
+            }
+            if(e.getCause() instanceof RuntimeException){
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
     }
 
     /**
      * Add a new course to the index.
      *
      * @param courseDetails Course document to index.
-     * @return Course object containing only the remoteId auto-generated by ElasticSearch.
+     * @return Course object containing only the remoteId auto-generated by the repository.
      * @throws IOException
      */
     public Course add(Course courseDetails) throws IOException{
-        IndexRequest indexRequest = new IndexRequest();
-        indexRequest.index(SEARCH_INDEX_NAME);
-        indexRequest.type(SEARCH_TYPE_NAME);
-        indexRequest.source(this.gson.toJson(courseDetails), XContentType.JSON);
-        IndexResponse indexResponse = this.searchClient.index(indexRequest, RequestOptions.DEFAULT);
-        return new Course(indexResponse.getId());
+        return this.operationTimer.sync(OPERATION_ADD, () -> {
+            String id = this.repository.add(this.toSource(courseDetails));
+            this.searchCache.invalidateAll();
+            this.coursePackService.invalidateAll();
+            return new Course(id);
+        });
+    }
+
+    /**
+     * Indexes a stream of course documents in bulk. A document containing a remoteId replaces the course with that
+     * ID, otherwise a new course is added.
+     *
+     * @param documents Course documents as JSON, one per element.
+     * @return Number of documents indexed and the failure reason of every document that was not.
+     * @throws IOException
+     */
+    public CourseBulkResult bulkAdd(Stream<String> documents) throws IOException{
+        return this.operationTimer.sync(OPERATION_BULK, () -> this.bulkIndex(documents));
+    }
+
+    private CourseBulkResult bulkIndex(Stream<String> documents) throws IOException{
+        CourseBulkResult result = new CourseBulkResult();
+
+        //Documents are parsed as the repository consumes them, malformed ones are recorded and skipped.
+        AtomicInteger number = new AtomicInteger();
+        Iterator<CourseDocument> parsed = documents.map((json) -> {
+                                                        int document = number.incrementAndGet();
+                                                        if(json.trim().isEmpty()){
+                                                            return null;
+                                                        }
+                                                        try{
+                                                            return this.toDocument(document, json);
+                                                        }
+                                                        catch(JsonParseException | IllegalStateException e){
+                                                            result.failed(document, e.getMessage());
+                                                            return null;
+                                                        }
+                                                    })
+                                                    .filter(Objects::nonNull)
+                                                    .iterator();
+        try{
+            this.repository.bulkIndex(parsed, result);
+        }
+        finally{
+            this.courseCache.invalidateAll();
+            this.searchCache.invalidateAll();
+            this.coursePackService.invalidateAll();
+        }
+        return result;
+    }
+
+    /**
+     * Creates the course index with the given mapping if it doesn't exist yet.
+     *
+     * @param mapping Index mapping, see es_bootstrap_json/coursemapping.json
+     * @return true if the index was created.
+     * @throws IOException
+     */
+    public boolean createIndex(String mapping) throws IOException{
+        return this.repository.createIndex(mapping);
+    }
+
+    private CourseDocument toDocument(int number, String json){
+        JsonObject document = new JsonParser().parse(json).getAsJsonObject();
+        JsonElement remoteId = document.remove(FIELD_REMOTE_ID);
+        document.remove(FIELD_DISTANCE);
+
+        return new CourseDocument(number,
+                                  (remoteId != null && !remoteId.isJsonNull()) ? remoteId.getAsString() : null,
+                                  this.toSource(this.gson.fromJson(document, Course.class)));
     }
 
     /**
@@ -175,12 +512,13 @@ public class CourseService {
      * @throws IOException
      */
     public void update(String id, Course course) throws IOException{
-        UpdateRequest updateRequest = new UpdateRequest();
-        updateRequest.index(SEARCH_INDEX_NAME);
-        updateRequest.type(SEARCH_TYPE_NAME);
-        updateRequest.id(id);
-        updateRequest.doc(this.gson.toJson(course), XContentType.JSON);
-        this.searchClient.update(updateRequest, RequestOptions.DEFAULT);
+        this.operationTimer.sync(OPERATION_UPDATE, () -> {
+            this.repository.update(id, this.toSource(course));
+            this.courseCache.invalidate(id);
+            this.searchCache.invalidateAll();
+            this.coursePackService.invalidateAll();
+            return null;
+        });
     }
 
     /**
@@ -190,11 +528,13 @@ public class CourseService {
      * @throws IOException
      */
     public void delete(String id) throws IOException{
-        DeleteRequest deleteRequest = new DeleteRequest();
-        deleteRequest.index(SEARCH_INDEX_NAME);
-        deleteRequest.type(SEARCH_TYPE_NAME);
-        deleteRequest.id(id);
-        this.searchClient.delete(deleteRequest, RequestOptions.DEFAULT);
+        this.operationTimer.sync(OPERATION_DELETE, () -> {
+            this.repository.delete(id, this.modified());
+            this.courseCache.invalidate(id);
+            this.searchCache.invalidateAll();
+            this.coursePackService.invalidateAll();
+            return null;
+        });
     }
 
 }
@@ -2,25 +2,38 @@ package ca.dait.opengolf.services;
 
 import ca.dait.opengolf.auth.AuthenticationTokens;
 import ca.dait.opengolf.auth.UserCredentials;
-import com.auth0.jwk.Jwk;
 import com.auth0.jwk.JwkException;
-import com.auth0.jwk.UrlJwkProvider;
 import com.auth0.jwt.JWT;
 import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.AlgorithmMismatchException;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.Claim;
 import com.auth0.jwt.interfaces.DecodedJWT;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.security.interfaces.RSAPublicKey;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
@@ -29,6 +42,9 @@ import java.util.logging.Logger;
 /**
  * Handles persistence and verification of the users session. The session is comprised of an AWS ID and refresh token
  * saved as cookies.
+ *
+ * Verified ID tokens are cached by their SHA-256 hash until they expire, so a browser sending the same token on every
+ * request only pays for the RS256 signature verification once.
  */
 @Service
 public class CredentialsService {
@@ -43,26 +59,79 @@ public class CredentialsService {
     private static final String COGNITO_GROUPS = "cognito:groups";
     private static final String COGNITO_EXPIRATION = "exp";
 
+    private static final String CACHE_STATS_TOKEN = "token";
+
+    private static final String METRIC_VERIFY = "opengolf.auth.verify";
+    private static final String METRIC_JWKS = "opengolf.auth.jwks";
+    private static final String OPERATION_ID_TOKEN = "idToken";
+    private static final String OPERATION_FETCH = "fetch";
+    private static final String OUTCOME_CACHED = "cached";
+    private static final String OUTCOME_VERIFIED = "verified";
+    private static final String OUTCOME_EXPIRED = "expired";
+    private static final String OUTCOME_INVALID = "invalid";
+
     @Autowired
     protected LoginService loginService;
 
     private final boolean cookieIsSecure;
     private final int cookieRefreshTimeout;
 
-    private final UrlJwkProvider jwkProvider;
-    private final Map<String, Algorithm> algorithms;
+    private final JwkKeyCache jwkKeyCache;
+    private final Cache<String, VerifiedToken> tokenCache;
+    private final OperationTimer verifyTimer;
 
     private static final Logger LOGGER = Logger.getLogger(CredentialsService.class.getName());
 
     @Autowired
     public CredentialsService(@Value("${ENV_JWK_URL}") String jwkUrl,
                               @Value("${ENV_AUTH_COOKIE_SECURE:true}") boolean cookieIsSecure,
-                              @Value("${ENV_REFRESH_COOKIE_TIMEOUT:2592000}") int cookieRefreshTimeout) throws MalformedURLException{
+                              @Value("${ENV_REFRESH_COOKIE_TIMEOUT:2592000}") int cookieRefreshTimeout,
+                              @Value("${ENV_JWK_TIMEOUT:5000}") int jwkTimeout,
+                              @Value("${ENV_JWK_MIN_LOAD_INTERVAL:60}") long jwkMinLoadInterval,
+                              @Value("${ENV_JWK_REFRESH_INTERVAL:3600}") long jwkRefreshInterval,
+                              @Value("${ENV_JWK_PRELOAD:false}") boolean jwkPreload,
+                              @Value("${ENV_TOKEN_CACHE_SIZE:10000}") long tokenCacheSize,
+                              @Value("${ENV_TOKEN_CACHE_TTL:3600}") long tokenCacheTtl,
+                              MeterRegistry meterRegistry) throws MalformedURLException{
+
+        this(new JwkKeyCache(timed(new JwkKeyCache.UrlKeySetLoader(new URL(jwkUrl), jwkTimeout, jwkTimeout), meterRegistry),
+                             jwkMinLoadInterval, jwkRefreshInterval),
+             cookieIsSecure, cookieRefreshTimeout, tokenCacheSize, tokenCacheTtl, meterRegistry);
+
+        if(jwkPreload){
+            this.jwkKeyCache.refreshQuietly();
+        }
+    }
 
-        this.jwkProvider = new UrlJwkProvider(new URL(jwkUrl));
-        this.algorithms = new HashMap<>();
+    CredentialsService(JwkKeyCache jwkKeyCache, boolean cookieIsSecure, int cookieRefreshTimeout,
+                       long tokenCacheSize, long tokenCacheTtl, MeterRegistry meterRegistry){
+        this.jwkKeyCache = jwkKeyCache;
         this.cookieIsSecure = cookieIsSecure;
         this.cookieRefreshTimeout = cookieRefreshTimeout;
+        this.tokenCache = CacheBuilder.newBuilder()
+                                        .maximumSize(tokenCacheSize)
+                                        .expireAfterWrite(tokenCacheTtl, TimeUnit.SECONDS)
+                                        .recordStats()
+                                        .build();
+        this.verifyTimer = new OperationTimer(meterRegistry, METRIC_VERIFY);
+        GuavaCacheMetrics.monitor(meterRegistry, this.tokenCache, CACHE_STATS_TOKEN);
+    }
+
+    /**
+     * Times every load of the JSON web key set, the timer count is the number of JWKS fetches.
+     *
+     * @param loader
+     * @param meterRegistry
+     * @return
+     */
+    private static JwkKeyCache.KeySetLoader timed(JwkKeyCache.KeySetLoader loader, MeterRegistry meterRegistry){
+        OperationTimer timer = new OperationTimer(meterRegistry, METRIC_JWKS);
+        return () -> timer.sync(OPERATION_FETCH, loader::load);
+    }
+
+    @PreDestroy
+    public void close(){
+        this.jwkKeyCache.close();
     }
 
     /**
@@ -106,12 +175,41 @@ public class CredentialsService {
     }
 
     /**
-     * Attempts to validate the ID JWT token. Return null if the token is invalid.
+     * Hit, miss and eviction counters of the verified token cache, keyed by cache name.
+     *
+     * @return
+     */
+    public Map<String, CacheStats> getCacheStats(){
+        return ImmutableMap.of(CACHE_STATS_TOKEN, this.tokenCache.stats());
+    }
+
+    /**
+     * Attempts to validate the ID JWT token. Return null if the token is invalid. Tokens that verified before are
+     * answered from the token cache until they expire.
      *
      * @param token
      * @return
      */
     protected UserCredentials verifyIdToken(String token){
+        Timer.Sample sample = this.verifyTimer.start();
+        String key = Hashing.sha256().hashString(token, StandardCharsets.UTF_8).toString();
+        VerifiedToken verified = this.tokenCache.getIfPresent(key);
+        if(verified != null){
+            if(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) < verified.expires){
+                this.verifyTimer.stop(sample, OPERATION_ID_TOKEN, OUTCOME_CACHED);
+                return verified.credentials;
+            }
+            this.tokenCache.invalidate(key);
+            this.verifyTimer.stop(sample, OPERATION_ID_TOKEN, OUTCOME_EXPIRED);
+            return null;
+        }
+
+        UserCredentials credentials = this.verifyToken(key, token);
+        this.verifyTimer.stop(sample, OPERATION_ID_TOKEN, (credentials != null) ? OUTCOME_VERIFIED : OUTCOME_INVALID);
+        return credentials;
+    }
+
+    private UserCredentials verifyToken(String key, String token){
         try {
             DecodedJWT decodedJWT = JWT.decode(token);
             this.verifyJWT(decodedJWT);
@@ -120,7 +218,9 @@ public class CredentialsService {
             if(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) < expires.asLong()) {
                 Claim username = decodedJWT.getClaim(COGNITO_USERNAME);
                 Claim roles = decodedJWT.getClaim(COGNITO_GROUPS);
-                return new UserCredentials(true, username.as(String.class), roles.asArray(String.class));
+                UserCredentials credentials = new UserCredentials(true, username.as(String.class), roles.asArray(String.class));
+                this.tokenCache.put(key, new VerifiedToken(credentials, expires.asLong()));
+                return credentials;
             }
         }
         catch(JwkException | JWTVerificationException e){
@@ -136,22 +236,52 @@ public class CredentialsService {
      * @param response
      */
     public void save(AuthenticationTokens tokens, HttpServletResponse response) {
+        for(String cookie : this.cookies(tokens)){
+            response.addHeader(HttpHeaders.SET_COOKIE, cookie);
+        }
+    }
+
+    /**
+     * Set-Cookie header values saving the authentication tokens, for responses written after the request thread
+     * returned, ie: as ResponseEntity headers.
+     *
+     * @param tokens
+     * @return
+     */
+    public List<String> cookies(AuthenticationTokens tokens){
+        List<String> cookies = new ArrayList<>(2);
         if (tokens.id != null) {
-            Cookie idCookie = new Cookie(ID_COOKIE_NAME, tokens.id);
-            idCookie.setSecure(this.cookieIsSecure);
-            idCookie.setHttpOnly(COOKIE_HTTP_ONLY);
-            idCookie.setMaxAge(SESSION_COOKIE_MAX_AGE); //TODO: Set this based on token timeout?
-            idCookie.setPath(COOKIE_PATH);
-            response.addCookie(idCookie);
+            cookies.add(this.cookie(ID_COOKIE_NAME, tokens.id, SESSION_COOKIE_MAX_AGE)); //TODO: Set this based on token timeout?
         }
         if (tokens.refresh != null){
-            Cookie refreshCookie = new Cookie(REFRESH_COOKIE_NAME, tokens.refresh);
-            refreshCookie.setSecure(this.cookieIsSecure);
-            refreshCookie.setHttpOnly(COOKIE_HTTP_ONLY);
-            refreshCookie.setMaxAge(this.cookieRefreshTimeout); //30 Days
-            refreshCookie.setPath(COOKIE_PATH);
-            response.addCookie(refreshCookie);
+            cookies.add(this.cookie(REFRESH_COOKIE_NAME, tokens.refresh, this.cookieRefreshTimeout)); //30 Days
         }
+        return cookies;
+    }
+
+    /**
+     * Set-Cookie header value, a negative max age is a session cookie.
+     *
+     * @param name
+     * @param value
+     * @param maxAge
+     * @return
+     */
+    private String cookie(String name, String value, int maxAge){
+        StringBuilder cookie = new StringBuilder(name).append('=').append(value);
+        if(maxAge >= 0){
+            cookie.append("; Max-Age=").append(maxAge)
+                  .append("; Expires=").append(DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                                                    ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(maxAge)));
+        }
+        cookie.append("; Path=").append(COOKIE_PATH);
+        if(this.cookieIsSecure){
+            cookie.append("; Secure");
+        }
+        if(COOKIE_HTTP_ONLY){
+            cookie.append("; HttpOnly");
+        }
+        return cookie.toString();
     }
 
     /**
@@ -180,17 +310,10 @@ public class CredentialsService {
      * @throws JwkException
      */
     private void verifyJWT(DecodedJWT decodedJWT) throws JwkException{
-        String keyId = decodedJWT.getKeyId();
-        Algorithm algorithm = this.algorithms.get(keyId);
-        if (algorithm == null) {
-            if ("RS256".equals(decodedJWT.getAlgorithm())) {
-                Jwk jwk = this.jwkProvider.get(keyId);
-                algorithm = Algorithm.RSA256((RSAPublicKey) jwk.getPublicKey(), null);
-                this.algorithms.put(keyId, algorithm);
-            } else {
-                throw new IllegalArgumentException(decodedJWT.getAlgorithm());
-            }
+        if (!"RS256".equals(decodedJWT.getAlgorithm())) {
+            throw new AlgorithmMismatchException("Unsupported algorithm: " + decodedJWT.getAlgorithm());
         }
+        Algorithm algorithm = this.jwkKeyCache.get(decodedJWT.getKeyId());
         algorithm.verify(decodedJWT);
     }
 
@@ -205,7 +328,7 @@ public class CredentialsService {
                 this.getCookieValue(REFRESH_COOKIE_NAME, request));
     }
 
-    private String getCookieValue(String name, HttpServletRequest request){
+    String getCookieValue(String name, HttpServletRequest request){
         Cookie cookies[] = request.getCookies();
         if(cookies != null){
             for(Cookie cookie : request.getCookies()){
@@ -218,4 +341,13 @@ public class CredentialsService {
         return null;
     }
 
+    private static class VerifiedToken {
+        final UserCredentials credentials;
+        final long expires;
+
+        VerifiedToken(UserCredentials credentials, long expires){
+            this.credentials = credentials;
+            this.expires = expires;
+        }
+    }
 }
@@ -0,0 +1,39 @@
+package ca.dait.opengolf.services;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.protocol.HttpContext;
+import org.elasticsearch.client.HeapBufferedAsyncResponseConsumer;
+
+/**
+ * Heap buffered Elasticsearch response consumer that transparently decompresses gzip encoded responses. The 6.x
+ * RestClient asks for compressed responses when told to, but does not decompress them itself.
+ */
+class DecompressingResponseConsumer extends HeapBufferedAsyncResponseConsumer {
+
+    private static final String GZIP = "gzip";
+
+    DecompressingResponseConsumer(int bufferLimit){
+        super(bufferLimit);
+    }
+
+    @Override
+    protected HttpResponse buildResult(HttpContext context) throws Exception {
+        HttpResponse response = super.buildResult(context);
+        HttpEntity entity = response.getEntity();
+        if(entity != null){
+            Header encoding = entity.getContentEncoding();
+            if(encoding == null){
+                encoding = response.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+            }
+            if(encoding != null && GZIP.equalsIgnoreCase(encoding.getValue())){
+                response.setEntity(new GzipDecompressingEntity(entity));
+                response.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+            }
+        }
+        return response;
+    }
+}
@@ -0,0 +1,611 @@
+package ca.dait.opengolf.services;
+
+import ca.dait.opengolf.awslabs.AWSRequestSigningApacheInterceptor;
+import com.amazonaws.auth.AWS4Signer;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.google.common.collect.ImmutableMap;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
+import org.elasticsearch.action.admin.indices.get.GetIndexRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.FuzzyQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.functionscore.ExponentialDecayFunctionBuilder;
+import org.elasticsearch.index.query.functionscore.FunctionScoreQueryBuilder;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders;
+import org.elasticsearch.index.search.MatchQuery;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortMode;
+import org.elasticsearch.search.sort.SortOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Course repository backed by the course index in ElasticSearch, requests are signed for the AWS Elasticsearch
+ * service.
+ *
+ * Tombstones of deleted courses are kept in a separate index, so gets and searches never see them. The change feed
+ * searches both indices at once.
+ *
+ * Reads are non-blocking, get and search complete on the ElasticSearch client's IO threads. The number of reads in
+ * flight against ElasticSearch is capped, reads over the limit fail fast with a ServiceUnavailableException.
+ */
+@Service
+@ConditionalOnProperty(name = CourseRepository.PROPERTY, havingValue = "elasticsearch", matchIfMissing = true)
+public class ElasticsearchCourseRepository implements CourseRepository {
+
+    private static final String SIGNER_SERVICE_NAME = "es";
+
+    private static final String SEARCH_INDEX_NAME = "opengolf";
+    private static final String SEARCH_TYPE_NAME = "course";
+    private static final String SEARCH_FIELD_HOLES = "holes";
+    private static final String SEARCH_FIELD_ID = "_id";
+    private static final String SEARCH_FIELD_COUNTRY = "country";
+    private static final String SEARCH_FIELD_STATE = "state";
+
+    private static final String TOMBSTONE_INDEX_NAME = "opengolf_tombstones";
+    private static final String TOMBSTONE_TYPE_NAME = "tombstone";
+    private static final String TOMBSTONE_MAPPING = "{\"mappings\":{\"" + TOMBSTONE_TYPE_NAME + "\":{\"dynamic\":\"strict\"," +
+                                                    "\"properties\":{\"" + FIELD_MODIFIED + "\":{\"type\":\"long\"}," +
+                                                    "\"deleted\":{\"type\":\"boolean\"}}}}}";
+    private static final String SORT_MISSING_FIRST = "_first";
+
+    private static final String SEARCH_LAT = "lat";
+    private static final String SEARCH_LON = "lon";
+
+    private static final long BULK_TIMEOUT_MINUTES = 10;
+    //The BulkProcessor default, set explicitly so the change feed lag can account for its retries.
+    private static final BackoffPolicy BULK_BACKOFF = BackoffPolicy.exponentialBackoff();
+    //The index default, neither index sets refresh_interval.
+    private static final long REFRESH_INTERVAL_MILLIS = 1000;
+
+    private static final String POOL_STATS_LEASED = "leased";
+    private static final String POOL_STATS_PENDING = "pending";
+    private static final String POOL_STATS_AVAILABLE = "available";
+    private static final String POOL_STATS_MAX = "max";
+
+    private static final String METRIC_SEARCH_CONNECTIONS = "opengolf.search.connections";
+    private static final String TAG_STATE = "state";
+
+    private static final String ENCODING_GZIP = "gzip";
+    private static final int RESPONSE_BUFFER_LIMIT = 100 * 1024 * 1024;
+
+    private RestHighLevelClient searchClient;
+    private final RequestOptions requestOptions;
+    private final PoolingNHttpClientConnectionManager connectionManager;
+    private final Semaphore searchPermits;
+
+    private final int bulkActions;
+    private final long bulkFlushInterval;
+    private final int bulkConcurrentRequests;
+    private final long changesLag;
+
+    @Autowired
+    public ElasticsearchCourseRepository(@Value("${ENV_SEARCH_HOST}") String host,
+                                         @Value("${ENV_SEARCH_PORT}") Integer port,
+                                         @Value("${ENV_SEARCH_SCHEME}") String scheme,
+                                         @Value("${AWS_REGION}") String region,
+                                         @Value("${ENV_SEARCH_MAX_CONCURRENCY:64}") int searchMaxConcurrency,
+                                         @Value("${ENV_BULK_ACTIONS:500}") int bulkActions,
+                                         @Value("${ENV_BULK_FLUSH_INTERVAL:5}") long bulkFlushInterval,
+                                         @Value("${ENV_BULK_CONCURRENT_REQUESTS:1}") int bulkConcurrentRequests,
+                                         @Value("${ENV_SEARCH_CREDENTIALS_TTL:60}") long credentialsTtl,
+                                         @Value("${ENV_SEARCH_MAX_CONNECTIONS:100}") int maxConnections,
+                                         @Value("${ENV_SEARCH_MAX_CONNECTIONS_PER_ROUTE:100}") int maxConnectionsPerRoute,
+                                         @Value("${ENV_SEARCH_IO_THREADS:0}") int ioThreads,
+                                         @Value("${ENV_SEARCH_KEEP_ALIVE:30}") long keepAlive,
+                                         @Value("${ENV_SEARCH_CONNECT_TIMEOUT:1000}") int connectTimeout,
+                                         @Value("${ENV_SEARCH_SOCKET_TIMEOUT:30000}") int socketTimeout,
+                                         @Value("${ENV_SEARCH_COMPRESSION:true}") boolean compression,
+                                         MeterRegistry meterRegistry){
+
+        AWS4Signer signer = new AWS4Signer();
+        signer.setServiceName(SIGNER_SERVICE_NAME);
+        signer.setRegionName(region);
+
+        HttpRequestInterceptor interceptor = new AWSRequestSigningApacheInterceptor(SIGNER_SERVICE_NAME, signer,
+                                                                    new DefaultAWSCredentialsProviderChain(), credentialsTtl);
+
+        this.connectionManager = createConnectionManager(ioThreads, socketTimeout, connectTimeout);
+        this.connectionManager.setMaxTotal(maxConnections);
+        this.connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+
+        long keepAliveMillis = TimeUnit.SECONDS.toMillis(keepAlive);
+        this.searchClient = new RestHighLevelClient(RestClient.builder(new HttpHost(host, port, scheme))
+                .setMaxRetryTimeoutMillis(socketTimeout)
+                .setRequestConfigCallback(callback -> callback.setConnectTimeout(connectTimeout)
+                                                              .setSocketTimeout(socketTimeout))
+                .setHttpClientConfigCallback(callback -> callback
+                        .setConnectionManager(this.connectionManager)
+                        .setKeepAliveStrategy((response, context) -> {
+                            //Honour a shorter server keep alive, never hold idle connections longer than configured.
+                            long server = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                            return (server > 0) ? Math.min(server, keepAliveMillis) : keepAliveMillis;
+                        })
+                        .addInterceptorLast(interceptor))
+        );
+
+        RequestOptions.Builder options = RequestOptions.DEFAULT.toBuilder();
+        if(compression){
+            //Request bodies can't be compressed: the 6.x client captures the entity before any interceptor runs.
+            options.addHeader(HttpHeaders.ACCEPT_ENCODING, ENCODING_GZIP);
+            options.setHttpAsyncResponseConsumerFactory(() -> new DecompressingResponseConsumer(RESPONSE_BUFFER_LIMIT));
+        }
+        this.requestOptions = options.build();
+        this.searchPermits = new Semaphore(searchMaxConcurrency);
+
+        this.bulkActions = bulkActions;
+        this.bulkFlushInterval = bulkFlushInterval;
+        this.bulkConcurrentRequests = bulkConcurrentRequests;
+        this.changesLag = changesLag(bulkFlushInterval, socketTimeout);
+
+        for(String state : this.getConnectionStats().keySet()){
+            Gauge.builder(METRIC_SEARCH_CONNECTIONS, this, (repository) -> repository.getConnectionStats().get(state))
+                    .tag(TAG_STATE, state)
+                    .register(meterRegistry);
+        }
+    }
+
+    @Override
+    public CompletableFuture<CourseHit> get(String id){
+        GetRequest getRequest = new GetRequest(SEARCH_INDEX_NAME, SEARCH_TYPE_NAME, id);
+        return this.<GetResponse>execute((listener) -> this.searchClient.getAsync(getRequest, this.requestOptions, listener))
+                    .thenApply((response) -> (response.isExists()) ?
+                            CourseHit.of(id, BytesReference.toBytes(response.getSourceAsBytesRef())) : null);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, CourseHit>> getAll(Collection<String> ids){
+        MultiGetRequest multiGetRequest = new MultiGetRequest();
+        for(String id : ids){
+            multiGetRequest.add(SEARCH_INDEX_NAME, SEARCH_TYPE_NAME, id);
+        }
+        return this.<MultiGetResponse>execute((listener) -> this.searchClient.mgetAsync(multiGetRequest, this.requestOptions, listener))
+                    .thenApply((response) -> {
+                        Map<String, CourseHit> hits = new HashMap<>();
+                        for(MultiGetItemResponse item : response.getResponses()){
+                            if(item.isFailed()){
+                                throw new CompletionException(item.getFailure().getFailure());
+                            }
+                            GetResponse get = item.getResponse();
+                            if(get.isExists()){
+                                hits.put(get.getId(), CourseHit.of(get.getId(), BytesReference.toBytes(get.getSourceAsBytesRef())));
+                            }
+                        }
+                        return hits;
+                    });
+    }
+
+    @Override
+    public CompletableFuture<Page> search(String searchTerm, Double lat, Double lon, int size, Object[] searchAfter){
+        SearchRequest searchRequest = new SearchRequest().source(searchSource(searchTerm, lat, lon, size, searchAfter));
+        return this.<SearchResponse>execute((listener) -> this.searchClient.searchAsync(searchRequest, this.requestOptions, listener))
+                    .thenApply((response) -> {
+                        SearchHit[] hits = response.getHits().getHits();
+                        return new Page(Arrays.stream(hits)
+                                            .map((hit) -> CourseHit.of(hit.getId(), BytesReference.toBytes(hit.getSourceRef())))
+                                            .collect(Collectors.toList()),
+                                        (hits.length == size) ? hits[hits.length - 1].getSortValues() : null);
+                    });
+    }
+
+    /**
+     * The search request body. Co-ordinates are only ever passed as parameters of the decay function and geo distance
+     * sort, never as a script, so no search compiles a script whatever co-ordinates it's given.
+     *
+     * @param searchTerm
+     * @param lat
+     * @param lon
+     * @param size
+     * @param searchAfter
+     * @return
+     */
+    static SearchSourceBuilder searchSource(String searchTerm, Double lat, Double lon, int size, Object[] searchAfter){
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+        searchSourceBuilder.size(size);
+        searchSourceBuilder.fetchSource(true);
+
+        QueryBuilder query = (searchTerm == null) ? QueryBuilders.matchAllQuery() :
+                                    QueryBuilders.multiMatchQuery(searchTerm, SEARCH_FIELDS)
+                                                .fuzziness(FuzzyQueryBuilder.DEFAULT_FUZZINESS)
+                                                .zeroTermsQuery(MatchQuery.ZeroTermsQuery.ALL);
+
+        searchSourceBuilder.sort(SortBuilders.scoreSort());
+
+        //If co-ordinates are included, wrap the search in a distance scorer
+        if(lat != null && lon != null){
+            //The decay scores a course without holes 1, the zero weight scores it 0 like EmbeddedCourseRepository.
+            query = QueryBuilders.functionScoreQuery(query, new FunctionScoreQueryBuilder.FilterFunctionBuilder[]{
+                    new FunctionScoreQueryBuilder.FilterFunctionBuilder(
+                            new ExponentialDecayFunctionBuilder(SEARCH_FIELD_HOLES,
+                                    ImmutableMap.of(SEARCH_LAT, lat, SEARCH_LON, lon), SEARCH_DISTANCE_SCALE + "m", null)),
+                    new FunctionScoreQueryBuilder.FilterFunctionBuilder(
+                            QueryBuilders.boolQuery().mustNot(QueryBuilders.existsQuery(SEARCH_FIELD_HOLES)),
+                            ScoreFunctionBuilders.weightFactorFunction(0))
+            });
+
+            //Ties in score are broken by the nearest hole.
+            searchSourceBuilder.sort(SortBuilders.geoDistanceSort(SEARCH_FIELD_HOLES, lat, lon)
+                                                .sortMode(SortMode.MIN)
+                                                .order(SortOrder.ASC));
+        }
+
+        //Unique tie breaker so search_after never skips or repeats a course.
+        searchSourceBuilder.sort(SortBuilders.fieldSort(SEARCH_FIELD_ID).order(SortOrder.ASC));
+        if(searchAfter != null){
+            searchSourceBuilder.searchAfter(searchAfter);
+        }
+        return searchSourceBuilder.query(query);
+    }
+
+    @Override
+    public long changesLag(){
+        return this.changesLag;
+    }
+
+    /**
+     * Bulk documents are stamped as they're handed to the BulkProcessor. The slowest one then waits for a request in
+     * flight to free a slot, sits in the buffer for up to the flush interval, waits for a slot again to be flushed, and
+     * is sent, each request taking up to the socket timeout. Rejected requests are retried after the backoff delays,
+     * a rejection is answered quickly. Once written, the document is searchable after the next refresh.
+     *
+     * @param bulkFlushInterval Seconds
+     * @param socketTimeout Milliseconds
+     * @return Milliseconds
+     */
+    static long changesLag(long bulkFlushInterval, int socketTimeout){
+        long retries = 0;
+        for(TimeValue delay : BULK_BACKOFF){
+            retries += delay.millis();
+        }
+        return TimeUnit.SECONDS.toMillis(bulkFlushInterval) + 3L * socketTimeout + retries + REFRESH_INTERVAL_MILLIS;
+    }
+
+    @Override
+    public CompletableFuture<Page> changes(Long since, long until, int size, Object[] searchAfter){
+        QueryBuilder query = QueryBuilders.rangeQuery(FIELD_MODIFIED).gt(since).lte(until);
+        if(since == null){
+            query = QueryBuilders.boolQuery()
+                                 .should(query)
+                                 .should(QueryBuilders.boolQuery().mustNot(QueryBuilders.existsQuery(FIELD_MODIFIED)));
+        }
+
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+        searchSourceBuilder.size(size);
+        searchSourceBuilder.fetchSource(true);
+        searchSourceBuilder.sort(SortBuilders.fieldSort(FIELD_MODIFIED).order(SortOrder.ASC).missing(SORT_MISSING_FIRST));
+        searchSourceBuilder.sort(SortBuilders.fieldSort(SEARCH_FIELD_ID).order(SortOrder.ASC));
+        if(searchAfter != null){
+            searchSourceBuilder.searchAfter(searchAfter);
+        }
+
+        //The tombstone index is only created by the first delete if the bootstrap didn't create it.
+        SearchRequest searchRequest = new SearchRequest(SEARCH_INDEX_NAME, TOMBSTONE_INDEX_NAME)
+                                            .indicesOptions(IndicesOptions.lenientExpandOpen())
+                                            .source(searchSourceBuilder.query(query));
+        return this.<SearchResponse>execute((listener) -> this.searchClient.searchAsync(searchRequest, this.requestOptions, listener))
+                    .thenApply((response) -> {
+                        SearchHit[] hits = response.getHits().getHits();
+                        return new Page(Arrays.stream(hits)
+                                            .map((hit) -> CourseHit.of(hit.getId(), BytesReference.toBytes(hit.getSourceRef())))
+                                            .collect(Collectors.toList()),
+                                        (hits.length == size) ? hits[hits.length - 1].getSortValues() : null);
+                    });
+    }
+
+    /**
+     * Country and state are matched as phrases of the analyzed field, a course is in a bounding box if any of its
+     * holes is.
+     */
+    @Override
+    public CompletableFuture<Page> region(CourseRegion region, int size, Object[] searchAfter){
+        BoolQueryBuilder query = QueryBuilders.boolQuery();
+        if(region.bbox != null){
+            query.filter(QueryBuilders.geoBoundingBoxQuery(SEARCH_FIELD_HOLES)
+                                      .setCorners(region.bbox[2], region.bbox[1], region.bbox[0], region.bbox[3]));
+        }
+        if(region.country != null){
+            query.filter(QueryBuilders.matchPhraseQuery(SEARCH_FIELD_COUNTRY, region.country));
+        }
+        if(region.state != null){
+            query.filter(QueryBuilders.matchPhraseQuery(SEARCH_FIELD_STATE, region.state));
+        }
+
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+        searchSourceBuilder.size(size);
+        searchSourceBuilder.fetchSource(true);
+        searchSourceBuilder.sort(SortBuilders.fieldSort(SEARCH_FIELD_ID).order(SortOrder.ASC));
+        if(searchAfter != null){
+            searchSourceBuilder.searchAfter(searchAfter);
+        }
+
+        SearchRequest searchRequest = new SearchRequest(SEARCH_INDEX_NAME).source(searchSourceBuilder.query(query));
+        return this.<SearchResponse>execute((listener) -> this.searchClient.searchAsync(searchRequest, this.requestOptions, listener))
+                    .thenApply((response) -> {
+                        SearchHit[] hits = response.getHits().getHits();
+                        return new Page(Arrays.stream(hits)
+                                            .map((hit) -> CourseHit.of(hit.getId(), BytesReference.toBytes(hit.getSourceRef())))
+                                            .collect(Collectors.toList()),
+                                        (hits.length == size) ? hits[hits.length - 1].getSortValues() : null);
+                    });
+    }
+
+    /**
+     * Utilization of the Elasticsearch connection pool: leased, pending (waiting for a connection), available (idle)
+     * and max connections.
+     *
+     * @return
+     */
+    @Override
+    public Map<String, Integer> getConnectionStats(){
+        PoolStats stats = this.connectionManager.getTotalStats();
+        return ImmutableMap.of(POOL_STATS_LEASED, stats.getLeased(),
+                               POOL_STATS_PENDING, stats.getPending(),
+                               POOL_STATS_AVAILABLE, stats.getAvailable(),
+                               POOL_STATS_MAX, stats.getMax());
+    }
+
+    @Override
+    public String add(String source) throws IOException{
+        IndexRequest indexRequest = new IndexRequest();
+        indexRequest.index(SEARCH_INDEX_NAME);
+        indexRequest.type(SEARCH_TYPE_NAME);
+        indexRequest.source(source, XContentType.JSON);
+        return this.searchClient.index(indexRequest, this.requestOptions).getId();
+    }
+
+    /**
+     * Documents are batched by a BulkProcessor according to the configured batch size and flush interval.
+     *
+     * @param documents
+     * @param result
+     * @throws IOException
+     */
+    @Override
+    public void bulkIndex(Iterator<CourseDocument> documents, CourseBulkResult result) throws IOException{
+        BulkProcessor processor = BulkProcessor.builder(
+                    (request, listener) -> this.searchClient.bulkAsync(request, this.requestOptions, listener),
+                    new BulkProcessor.Listener() {
+                        @Override
+                        public void beforeBulk(long executionId, BulkRequest request) {}
+
+                        @Override
+                        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+                            for(BulkItemResponse item : response.getItems()){
+                                if(item.isFailed()){
+                                    result.failed((Integer) request.payloads().get(item.getItemId()), item.getFailureMessage());
+                                }
+                                else{
+                                    result.indexed();
+                                }
+                            }
+                        }
+
+                        @Override
+                        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+                            for(Object document : request.payloads()){
+                                result.failed((Integer) document, failure.getMessage());
+                            }
+                        }
+                    })
+                .setBulkActions(this.bulkActions)
+                .setFlushInterval(TimeValue.timeValueSeconds(this.bulkFlushInterval))
+                .setConcurrentRequests(this.bulkConcurrentRequests)
+                .setBackoffPolicy(BULK_BACKOFF)
+                .build();
+
+        try{
+            while(documents.hasNext()){
+                CourseDocument document = documents.next();
+                IndexRequest indexRequest = new IndexRequest();
+                indexRequest.index(SEARCH_INDEX_NAME);
+                indexRequest.type(SEARCH_TYPE_NAME);
+                if(document.id != null){
+                    indexRequest.id(document.id);
+                }
+                indexRequest.source(document.source, XContentType.JSON);
+                processor.add(indexRequest, document.number);
+            }
+        }
+        finally{
+            try{
+                if(!processor.awaitClose(BULK_TIMEOUT_MINUTES, TimeUnit.MINUTES)){
+                    //The outcome of the bulk requests still in flight is unknown, they aren't in the result.
+                    throw new IOException("Bulk index timed out after " + BULK_TIMEOUT_MINUTES + " minutes.");
+                }
+            }
+            catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    @Override
+    public void update(String id, String source) throws IOException{
+        UpdateRequest updateRequest = new UpdateRequest();
+        updateRequest.index(SEARCH_INDEX_NAME);
+        updateRequest.type(SEARCH_TYPE_NAME);
+        updateRequest.id(id);
+        updateRequest.doc(source, XContentType.JSON);
+        try{
+            this.searchClient.update(updateRequest, this.requestOptions);
+        }
+        catch(ElasticsearchStatusException e){
+            if(e.status() == RestStatus.NOT_FOUND){
+                throw new NotFoundException("Course " + id + " doesn't exist.", e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The tombstone is only written once the course is deleted, deleting a course that doesn't exist (or was already
+     * deleted) leaves no tombstone. A tombstone that fails to be written fails the delete, the course is gone but the
+     * change feed won't report it.
+     *
+     * @param id
+     * @param modified
+     * @throws IOException
+     */
+    @Override
+    public void delete(String id, long modified) throws IOException{
+        DeleteRequest deleteRequest = new DeleteRequest();
+        deleteRequest.index(SEARCH_INDEX_NAME);
+        deleteRequest.type(SEARCH_TYPE_NAME);
+        deleteRequest.id(id);
+
+        DeleteResponse response = this.searchClient.delete(deleteRequest, this.requestOptions);
+        if(response.getResult() != DocWriteResponse.Result.DELETED){
+            return;
+        }
+
+        IndexRequest tombstoneRequest = new IndexRequest();
+        tombstoneRequest.index(TOMBSTONE_INDEX_NAME);
+        tombstoneRequest.type(TOMBSTONE_TYPE_NAME);
+        tombstoneRequest.id(id);
+        tombstoneRequest.source(CourseHit.tombstone(id, modified).source, XContentType.JSON);
+        try{
+            this.searchClient.index(tombstoneRequest, this.requestOptions);
+        }
+        catch(IOException | ElasticsearchStatusException e){
+            throw new IOException("Deleted course " + id + " without a tombstone, the change feed won't report it.", e);
+        }
+    }
+
+    /**
+     * The tombstone index is created along with the course index, if missing.
+     *
+     * @param mapping
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public boolean createIndex(String mapping) throws IOException{
+        this.createIndex(TOMBSTONE_INDEX_NAME, TOMBSTONE_MAPPING);
+        return this.createIndex(SEARCH_INDEX_NAME, mapping);
+    }
+
+    private boolean createIndex(String index, String mapping) throws IOException{
+        if(this.searchClient.indices().exists(new GetIndexRequest().indices(index), this.requestOptions)){
+            return false;
+        }
+        CreateIndexRequest createIndexRequest = new CreateIndexRequest(index);
+        createIndexRequest.source(mapping, XContentType.JSON);
+        this.searchClient.indices().create(createIndexRequest, this.requestOptions);
+        return true;
+    }
+
+    /**
+     * Runs an asynchronous ElasticSearch call if a permit is available, otherwise fails fast.
+     *
+     * @param call
+     * @return
+     */
+    private <R> CompletableFuture<R> execute(Consumer<ActionListener<R>> call){
+        CompletableFuture<R> future = new CompletableFuture<>();
+        if(!this.searchPermits.tryAcquire()){
+            future.completeExceptionally(new ServiceUnavailableException("Too many concurrent course requests."));
+            return future;
+        }
+        try{
+            call.accept(ActionListener.wrap(future::complete, future::completeExceptionally));
+        }
+        catch(RuntimeException e){
+            future.completeExceptionally(e);
+        }
+        return future.whenComplete((result, e) -> this.searchPermits.release());
+    }
+
+    /**
+     * Builds the pooled connection manager of the Elasticsearch client. Providing our own manager gives access to its
+     * pool statistics, but means the IO reactor and TLS setup the RestClient would otherwise do have to be done here.
+     *
+     * @param ioThreads         IO reactor threads, 0 for one per available processor.
+     * @param socketTimeout     Socket timeout in milliseconds.
+     * @param connectTimeout    Connect timeout in milliseconds.
+     * @return
+     */
+    private static PoolingNHttpClientConnectionManager createConnectionManager(int ioThreads, int socketTimeout,
+                                                                               int connectTimeout){
+        IOReactorConfig reactorConfig = IOReactorConfig.custom()
+                                            .setIoThreadCount((ioThreads > 0) ? ioThreads : Runtime.getRuntime().availableProcessors())
+                                            .setSoTimeout(socketTimeout)
+                                            .setConnectTimeout(connectTimeout)
+                                            .setSoKeepAlive(true)
+                                            .build();
+        try{
+            return new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(reactorConfig),
+                    RegistryBuilder.<SchemeIOSessionStrategy>create()
+                            .register("http", NoopIOSessionStrategy.INSTANCE)
+                            .register("https", new SSLIOSessionStrategy(SSLContext.getDefault(),
+                                                                        SSLIOSessionStrategy.getDefaultHostnameVerifier()))
+                            .build());
+        }
+        catch(IOReactorException | NoSuchAlgorithmException e){
+            throw new IllegalStateException("Unable to create the search connection pool.", e);
+        }
+    }
+}
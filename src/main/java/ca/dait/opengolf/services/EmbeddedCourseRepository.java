@@ -0,0 +1,524 @@
+package ca.dait.opengolf.services;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.elasticsearch.common.UUIDs;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Course repository held in memory, for nodes that serve search without a network hop to ElasticSearch. Courses are
+ * loaded on startup from ENV_EMBEDDED_COURSES: either a directory of course documents, one per *.json file and
+ * identified by file name (see es_bootstrap_json/courses), or a snapshot file of one course document per line as
+ * accepted by the bulk endpoint.
+ *
+ * Search mirrors ElasticsearchCourseRepository: terms are matched against an inverted index (see TermIndex) and
+ * located searches decay the score exponentially with the distance to the nearest hole, found from a grid of hole
+ * positions (see SpatialGrid). Courses without holes score 0 in a located search, so they sort last.
+ *
+ * Writes are applied in memory only, they're lost on restart. So are tombstones, the change feed only covers deletes
+ * since startup.
+ */
+@Service
+@ConditionalOnProperty(name = CourseRepository.PROPERTY, havingValue = "embedded")
+public class EmbeddedCourseRepository implements CourseRepository {
+
+    private static final String FIELD_REMOTE_ID = "remoteId";
+    private static final String FIELD_DISTANCE = "distance";
+
+    private static final String COURSE_FILE_GLOB = "*.json";
+    private static final String COURSE_FILE_EXTENSION = ".json";
+
+    private static final double GRID_CELL_DEGREES = 0.1;
+    private static final double DISTANCE_DECAY = Math.log(0.5) / SEARCH_DISTANCE_SCALE;
+    private static final float MATCH_ALL_SCORE = 1f;
+
+    private static final Logger LOGGER = Logger.getLogger(EmbeddedCourseRepository.class.getName());
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<String, CourseHit> courses = new TreeMap<>();
+    private final TermIndex terms = new TermIndex(SEARCH_FIELDS);
+    private final SpatialGrid grid = new SpatialGrid(GRID_CELL_DEGREES);
+    private final Map<String, CourseHit> tombstones = new HashMap<>();
+    private final Map<String, Long> modified = new HashMap<>();
+
+    @Autowired
+    public EmbeddedCourseRepository(@Value("${ENV_EMBEDDED_COURSES:es_bootstrap_json/courses}") String source)
+            throws IOException {
+        Path path = Paths.get(source);
+        if(Files.isDirectory(path)){
+            try(DirectoryStream<Path> files = Files.newDirectoryStream(path, COURSE_FILE_GLOB)){
+                for(Path file : files){
+                    String name = file.getFileName().toString();
+                    this.put(name.substring(0, name.length() - COURSE_FILE_EXTENSION.length()),
+                             parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)));
+                }
+            }
+        }
+        else{
+            for(String line : Files.readAllLines(path, StandardCharsets.UTF_8)){
+                if(!line.trim().isEmpty()){
+                    this.put(null, parse(line));
+                }
+            }
+        }
+        LOGGER.log(Level.INFO, "Loaded " + this.courses.size() + " courses from " + path);
+    }
+
+    @Override
+    public CompletableFuture<CourseHit> get(String id){
+        this.lock.readLock().lock();
+        try{
+            return CompletableFuture.completedFuture(this.courses.get(id));
+        }
+        finally{
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Map<String, CourseHit>> getAll(Collection<String> ids){
+        Map<String, CourseHit> hits = new HashMap<>();
+        this.lock.readLock().lock();
+        try{
+            for(String id : ids){
+                CourseHit hit = this.courses.get(id);
+                if(hit != null){
+                    hits.put(id, hit);
+                }
+            }
+        }
+        finally{
+            this.lock.readLock().unlock();
+        }
+        return CompletableFuture.completedFuture(hits);
+    }
+
+    @Override
+    public CompletableFuture<Page> search(String searchTerm, Double lat, Double lon, int size, Object[] searchAfter){
+        boolean located = (lat != null && lon != null);
+        Scored after = (searchAfter == null) ? null : Scored.of(searchAfter, located);
+
+        List<Scored> page;
+        this.lock.readLock().lock();
+        try{
+            Map<String, Float> matches = (searchTerm == null) ? null : this.terms.search(searchTerm);
+            if(matches != null){
+                page = this.rank(matches, lat, lon, size, after);
+            }
+            else if(located){
+                page = this.nearest(lat, lon, size, after);
+            }
+            else{
+                page = this.all(size, after);
+            }
+        }
+        finally{
+            this.lock.readLock().unlock();
+        }
+        return CompletableFuture.completedFuture(
+                new Page(page.stream().map((scored) -> scored.hit).collect(Collectors.toList()),
+                         (page.size() == size) ? page.get(page.size() - 1).sortValues(located) : null));
+    }
+
+    /**
+     * Text matches, scored and sorted.
+     */
+    private List<Scored> rank(Map<String, Float> matches, Double lat, Double lon, int size, Scored after){
+        return matches.entrySet().stream()
+                        .map((match) -> {
+                            CourseHit hit = this.courses.get(match.getKey());
+                            if(lat == null || lon == null){
+                                return new Scored(hit, match.getValue(), 0);
+                            }
+                            double distance = distance(hit, lat, lon);
+                            return new Scored(hit, (float) (match.getValue() * decay(distance)), distance);
+                        })
+                        .filter((scored) -> after == null || scored.compareTo(after) > 0)
+                        .sorted()
+                        .limit(size)
+                        .collect(Collectors.toList());
+    }
+
+    /**
+     * Every course, nearest first. The score only depends on distance, so courses come out of the grid in order.
+     * Courses without holes follow the grid, scored 0 in ID order, as ElasticSearch sorts them.
+     */
+    private List<Scored> nearest(double lat, double lon, int size, Scored after){
+        List<Scored> page = new ArrayList<>(size);
+        //A cursor past the grid only has courses without holes left.
+        boolean pastGrid = (after != null && after.distance == Double.POSITIVE_INFINITY);
+        if(!pastGrid){
+            Iterator<SpatialGrid.Neighbour> nearest = this.grid.nearest(lat, lon);
+            while(page.size() < size && nearest.hasNext()){
+                SpatialGrid.Neighbour neighbour = nearest.next();
+                Scored scored = new Scored(this.courses.get(neighbour.id), (float) decay(neighbour.distance), neighbour.distance);
+                if(after == null || scored.compareTo(after) > 0){
+                    page.add(scored);
+                }
+            }
+        }
+        Iterator<String> unlocated = this.grid.unlocated(pastGrid ? after.id : null);
+        while(page.size() < size && unlocated.hasNext()){
+            page.add(new Scored(this.courses.get(unlocated.next()), 0, Double.POSITIVE_INFINITY));
+        }
+        return page;
+    }
+
+    /**
+     * Every course, equally scored so in ID order.
+     */
+    private List<Scored> all(int size, Scored after){
+        return ((after == null) ? this.courses : this.courses.tailMap(after.id, false)).values().stream()
+                        .limit(size)
+                        .map((hit) -> new Scored(hit, MATCH_ALL_SCORE, 0))
+                        .collect(Collectors.toList());
+    }
+
+    @Override
+    public CompletableFuture<Page> region(CourseRegion region, int size, Object[] searchAfter){
+        if(searchAfter != null && (searchAfter.length != 1 || searchAfter[0] == null)){
+            throw new BadRequestException("Invalid cursor.");
+        }
+
+        List<CourseHit> page;
+        this.lock.readLock().lock();
+        try{
+            page = ((searchAfter == null) ? this.courses : this.courses.tailMap(searchAfter[0].toString(), false))
+                            .values().stream()
+                            .filter((hit) -> region.contains(parse(hit.summary()), hit.geometry))
+                            .limit(size)
+                            .collect(Collectors.toList());
+        }
+        finally{
+            this.lock.readLock().unlock();
+        }
+        return CompletableFuture.completedFuture(
+                new Page(page, (page.size() == size) ? new Object[]{page.get(page.size() - 1).id} : null));
+    }
+
+    /**
+     * Writes are visible once they return, bulk documents are applied as they're stamped.
+     */
+    @Override
+    public long changesLag(){
+        return 0;
+    }
+
+    /**
+     * Every course and tombstone in the window, scanned and sorted. Changes are read far less often than searched,
+     * so they aren't indexed.
+     */
+    @Override
+    public CompletableFuture<Page> changes(Long since, long until, int size, Object[] searchAfter){
+        Change after = (searchAfter == null) ? null : Change.of(searchAfter);
+
+        List<Change> page;
+        List<CourseHit> hits;
+        this.lock.readLock().lock();
+        try{
+            page = this.modified.entrySet().stream()
+                            .filter((entry) -> (since == null || entry.getValue() > since) && entry.getValue() <= until)
+                            .map((entry) -> new Change(entry.getKey(), entry.getValue()))
+                            .filter((change) -> after == null || change.compareTo(after) > 0)
+                            .sorted()
+                            .limit(size)
+                            .collect(Collectors.toList());
+            hits = page.stream()
+                            .map((change) -> this.courses.getOrDefault(change.id, this.tombstones.get(change.id)))
+                            .collect(Collectors.toList());
+        }
+        finally{
+            this.lock.readLock().unlock();
+        }
+        return CompletableFuture.completedFuture(
+                new Page(hits, (page.size() == size) ? page.get(page.size() - 1).sortValues() : null));
+    }
+
+    @Override
+    public Map<String, Integer> getConnectionStats(){
+        return ImmutableMap.of();
+    }
+
+    @Override
+    public String add(String source){
+        return this.put(null, parse(source));
+    }
+
+    @Override
+    public void bulkIndex(Iterator<CourseDocument> documents, CourseBulkResult result){
+        while(documents.hasNext()){
+            CourseDocument document = documents.next();
+            try{
+                this.put(document.id, parse(document.source));
+                result.indexed();
+            }
+            catch(JsonParseException | IllegalStateException e){
+                result.failed(document.number, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void update(String id, String source){
+        JsonObject changes = parse(source);
+        this.lock.writeLock().lock();
+        try{
+            CourseHit existing = this.courses.get(id);
+            if(existing == null){
+                throw new NotFoundException("Course " + id + " doesn't exist.");
+            }
+            JsonObject document = parse(existing.source);
+            merge(document, changes);
+            this.put(id, document);
+        }
+        finally{
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(String id, long modified){
+        this.lock.writeLock().lock();
+        try{
+            //Like ElasticsearchCourseRepository, only a course that exists leaves a tombstone.
+            if(this.courses.containsKey(id)){
+                this.remove(id);
+                this.tombstones.put(id, CourseHit.tombstone(id, modified));
+                this.modified.put(id, modified);
+            }
+        }
+        finally{
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The embedded index always exists, it's loaded on startup.
+     *
+     * @param mapping
+     * @return false
+     */
+    @Override
+    public boolean createIndex(String mapping){
+        return false;
+    }
+
+    /**
+     * Adds or replaces a course.
+     *
+     * @param id Course ID, null to generate one.
+     * @param document
+     * @return The course ID.
+     */
+    private String put(String id, JsonObject document){
+        JsonElement remoteId = document.remove(FIELD_REMOTE_ID);
+        document.remove(FIELD_DISTANCE);
+        if(id == null){
+            id = (remoteId != null && !remoteId.isJsonNull()) ? remoteId.getAsString() : UUIDs.base64UUID();
+        }
+        CourseHit hit = CourseHit.of(id, document.toString().getBytes(StandardCharsets.UTF_8));
+
+        JsonElement modified = document.get(FIELD_MODIFIED);
+
+        this.lock.writeLock().lock();
+        try{
+            this.remove(id);
+            this.courses.put(id, hit);
+            this.terms.add(id, document);
+            this.grid.add(id, hit.geometry);
+            this.modified.put(id, (modified != null && !modified.isJsonNull()) ? modified.getAsLong() : Long.MIN_VALUE);
+        }
+        finally{
+            this.lock.writeLock().unlock();
+        }
+        return id;
+    }
+
+    /**
+     * Removes a course or tombstone, the caller holds the write lock.
+     *
+     * @param id
+     */
+    private void remove(String id){
+        CourseHit existing = this.courses.remove(id);
+        if(existing != null){
+            this.terms.remove(id, parse(existing.source));
+            this.grid.remove(id);
+        }
+        this.tombstones.remove(id);
+        this.modified.remove(id);
+    }
+
+    private static JsonObject parse(String source){
+        return new JsonParser().parse(source).getAsJsonObject();
+    }
+
+    private static JsonObject parse(byte[] source){
+        return new JsonParser().parse(CourseHit.reader(source)).getAsJsonObject();
+    }
+
+    /**
+     * Merges a partial document into a document like an ElasticSearch update: objects are merged recursively, any
+     * other value replaces the existing one.
+     *
+     * @param document
+     * @param changes
+     */
+    private static void merge(JsonObject document, JsonObject changes){
+        for(Map.Entry<String, JsonElement> change : changes.entrySet()){
+            JsonElement existing = document.get(change.getKey());
+            if(existing != null && existing.isJsonObject() && change.getValue().isJsonObject()){
+                merge(existing.getAsJsonObject(), change.getValue().getAsJsonObject());
+            }
+            else{
+                document.add(change.getKey(), change.getValue());
+            }
+        }
+    }
+
+    private static double distance(CourseHit hit, double lat, double lon){
+        Double distance = hit.geometry.nearestDistance(lat, lon);
+        //ElasticSearch's distance to a course without holes.
+        return (distance == null) ? Double.POSITIVE_INFINITY : distance;
+    }
+
+    private static double decay(double distance){
+        return Math.exp(DISTANCE_DECAY * distance);
+    }
+
+    /**
+     * A hit and its sort key: score, distance (0 if the search isn't located) then ID.
+     */
+    private static class Scored implements Comparable<Scored> {
+        final CourseHit hit;
+        final String id;
+        final float score;
+        final double distance;
+
+        Scored(CourseHit hit, float score, double distance){
+            this(hit, hit.id, score, distance);
+        }
+
+        private Scored(CourseHit hit, String id, float score, double distance){
+            this.hit = hit;
+            this.id = id;
+            this.score = score;
+            this.distance = distance;
+        }
+
+        /**
+         * Reads a sort key returned by {@link #sortValues(boolean)}.
+         *
+         * @param sortValues
+         * @param located
+         * @return
+         */
+        static Scored of(Object[] sortValues, boolean located){
+            int length = located ? 3 : 2;
+            if(sortValues.length != length || sortValues[length - 1] == null){
+                throw new BadRequestException("Invalid cursor.");
+            }
+            return new Scored(null, sortValues[length - 1].toString(), (float) number(sortValues[0]),
+                              located ? number(sortValues[1]) : 0);
+        }
+
+        /**
+         * A sort value as a number. Infinite distances come back from a cursor as the string "Infinity", so numeric
+         * strings are read like ElasticSearch reads them.
+         *
+         * @param sortValue
+         * @return
+         */
+        private static double number(Object sortValue){
+            if(sortValue instanceof Number){
+                return ((Number) sortValue).doubleValue();
+            }
+            try{
+                double number = Double.parseDouble(String.valueOf(sortValue));
+                if(Double.isNaN(number)){
+                    throw new NumberFormatException();
+                }
+                return number;
+            }
+            catch(NumberFormatException e){
+                throw new BadRequestException("Invalid cursor.");
+            }
+        }
+
+        Object[] sortValues(boolean located){
+            return located ? new Object[]{this.score, this.distance, this.id} : new Object[]{this.score, this.id};
+        }
+
+        @Override
+        public int compareTo(Scored other){
+            int result = Float.compare(other.score, this.score);
+            if(result == 0){
+                result = Double.compare(this.distance, other.distance);
+            }
+            return (result == 0) ? this.id.compareTo(other.id) : result;
+        }
+    }
+
+    /**
+     * A change and its sort key: modification time (Long.MIN_VALUE if it has none) then ID.
+     */
+    private static class Change implements Comparable<Change> {
+        final String id;
+        final long modified;
+
+        Change(String id, long modified){
+            this.id = id;
+            this.modified = modified;
+        }
+
+        /**
+         * Reads a sort key returned by {@link #sortValues()}.
+         *
+         * @param sortValues
+         * @return
+         */
+        static Change of(Object[] sortValues){
+            if(sortValues.length != 2 || !(sortValues[0] instanceof Number) || sortValues[1] == null){
+                throw new BadRequestException("Invalid cursor.");
+            }
+            return new Change(sortValues[1].toString(), ((Number) sortValues[0]).longValue());
+        }
+
+        Object[] sortValues(){
+            return new Object[]{this.modified, this.id};
+        }
+
+        @Override
+        public int compareTo(Change other){
+            int result = Long.compare(this.modified, other.modified);
+            return (result == 0) ? this.id.compareTo(other.id) : result;
+        }
+    }
+}
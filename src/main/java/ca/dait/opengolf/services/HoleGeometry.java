@@ -0,0 +1,177 @@
+package ca.dait.opengolf.services;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.elasticsearch.common.geo.GeoUtils;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Hole co-ordinates of a course held as parallel primitive arrays, used to compute distances in process.
+ *
+ * {@link #read(JsonReader)} reads the holes array of a course document ([{"lat":44.04, "lon":-79.16}, ...]) straight
+ * from the JSON stream, without a JsonObject or boxed lat/lon object per hole.
+ *
+ * Every hole keeps its slot, so hole indices match the course document. A hole without a position has NaN co-ordinates
+ * and is never the nearest hole.
+ */
+public class HoleGeometry {
+
+    private static final String LAT = "lat";
+    private static final String LON = "lon";
+
+    public static final HoleGeometry EMPTY = new HoleGeometry(new double[0], new double[0]);
+
+    //Most courses have 9 or 18 holes.
+    private static final int INITIAL_CAPACITY = 18;
+
+    private final double[] lats;
+    private final double[] lons;
+    private final boolean located;
+
+    public HoleGeometry(double[] lats, double[] lons){
+        this.lats = lats;
+        this.lons = lons;
+        boolean located = false;
+        for(int i = 0; i < lats.length && !located; i++){
+            located = this.located(i);
+        }
+        this.located = located;
+    }
+
+    /**
+     * Reads the holes array of a course document, ie: [{"lat":44.04, "lon":-79.16}, ...], from the reader's next value.
+     * A null or non array value is read as a course without holes. Holes missing their lat or lon, or that aren't an
+     * object, are kept without a position.
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public static HoleGeometry read(JsonReader in) throws IOException{
+        if(in.peek() != JsonToken.BEGIN_ARRAY){
+            in.skipValue();
+            return EMPTY;
+        }
+        double[] lats = new double[INITIAL_CAPACITY];
+        double[] lons = new double[INITIAL_CAPACITY];
+        int size = 0;
+
+        in.beginArray();
+        while(in.hasNext()){
+            double lat = Double.NaN;
+            double lon = Double.NaN;
+            if(in.peek() == JsonToken.BEGIN_OBJECT){
+                in.beginObject();
+                while(in.hasNext()){
+                    String name = in.nextName();
+                    if(LAT.equals(name) && in.peek() != JsonToken.NULL){
+                        lat = in.nextDouble();
+                    }
+                    else if(LON.equals(name) && in.peek() != JsonToken.NULL){
+                        lon = in.nextDouble();
+                    }
+                    else{
+                        in.skipValue();
+                    }
+                }
+                in.endObject();
+            }
+            else{
+                in.skipValue();
+            }
+            if(Double.isNaN(lat) || Double.isNaN(lon)){
+                lat = Double.NaN;
+                lon = Double.NaN;
+            }
+            if(size == lats.length){
+                lats = Arrays.copyOf(lats, size * 2);
+                lons = Arrays.copyOf(lons, size * 2);
+            }
+            lats[size] = lat;
+            lons[size] = lon;
+            size++;
+        }
+        in.endArray();
+        return (size == 0) ? EMPTY : new HoleGeometry(Arrays.copyOf(lats, size), Arrays.copyOf(lons, size));
+    }
+
+    public int size(){
+        return this.lats.length;
+    }
+
+    public double lat(int hole){
+        return this.lats[hole];
+    }
+
+    public double lon(int hole){
+        return this.lons[hole];
+    }
+
+    /**
+     * Whether the hole at the given index has a position.
+     *
+     * @param hole
+     * @return
+     */
+    public boolean located(int hole){
+        return !Double.isNaN(this.lats[hole]);
+    }
+
+    /**
+     * Whether any hole has a position, a course without one can't be measured to.
+     *
+     * @return
+     */
+    public boolean isLocated(){
+        return this.located;
+    }
+
+    /**
+     * Index of the hole closest to the given co-ordinates, -1 if no hole has a position.
+     *
+     * @param lat
+     * @param lon
+     * @return
+     */
+    public int nearestHole(double lat, double lon){
+        int nearest = -1;
+        double nearestDistance = Double.MAX_VALUE;
+        for(int i = 0; i < this.lats.length; i++){
+            if(!this.located(i)){
+                continue;
+            }
+            double distance = GeoUtils.arcDistance(lat, lon, this.lats[i], this.lons[i]);
+            if(distance < nearestDistance){
+                nearest = i;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Distance in meters from the given co-ordinates to the closest hole, null if no hole has a position.
+     *
+     * @param lat
+     * @param lon
+     * @return
+     */
+    public Double nearestDistance(double lat, double lon){
+        int nearest = this.nearestHole(lat, lon);
+        return (nearest < 0) ? null : this.distance(nearest, lat, lon);
+    }
+
+    /**
+     * Distance in meters from the given co-ordinates to the hole at the given index, NaN if it has no position.
+     *
+     * @param hole
+     * @param lat
+     * @param lon
+     * @return
+     */
+    public double distance(int hole, double lat, double lon){
+        return GeoUtils.arcDistance(lat, lon, this.lats[hole], this.lons[hole]);
+    }
+}
@@ -0,0 +1,13 @@
+package ca.dait.opengolf.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A response body that writes its own JSON, used to pass raw course documents through without a deserialize and
+ * re-serialize round trip.
+ */
+@FunctionalInterface
+public interface JsonBody {
+    void writeTo(OutputStream out) throws IOException;
+}
@@ -0,0 +1,242 @@
+package ca.dait.opengolf.services;
+
+import com.auth0.jwk.Jwk;
+import com.auth0.jwk.JwkException;
+import com.auth0.jwk.SigningKeyNotFoundException;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Thread safe cache of the RS256 verification algorithms published in a JSON Web Key Set, keyed by key ID.
+ *
+ * - The whole key set is loaded at once. Loads triggered by an unknown key ID are single-flight, concurrent requests
+ *   for the same (or any other) unknown key wait on the one load rather than each fetching the key set.
+ * - Loads for unknown key IDs are rate limited, within the minimum interval of the last load an unknown key ID fails
+ *   immediately.
+ * - Optionally the key set is refreshed in the background so a key rotation is picked up before it reaches the
+ *   request path.
+ */
+public class JwkKeyCache implements Closeable {
+
+    private static final String RS256 = "RS256";
+    private static final String RSA = "RSA";
+
+    private static final Logger LOGGER = Logger.getLogger(JwkKeyCache.class.getName());
+
+    private final KeySetLoader loader;
+    private final long minLoadIntervalMillis;
+    private final ConcurrentMap<String, Algorithm> algorithms = new ConcurrentHashMap<>();
+    private final Object loadLock = new Object();
+    private final ScheduledExecutorService scheduler;
+
+    private volatile long lastLoad;
+
+    /**
+     * @param loader Source of the key set.
+     * @param minLoadInterval Minimum seconds between loads triggered by unknown key IDs.
+     * @param refreshInterval Seconds between background refreshes, 0 to disable.
+     */
+    public JwkKeyCache(KeySetLoader loader, long minLoadInterval, long refreshInterval){
+        this.loader = loader;
+        this.minLoadIntervalMillis = TimeUnit.SECONDS.toMillis(minLoadInterval);
+
+        if(refreshInterval > 0){
+            this.scheduler = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+                Thread thread = new Thread(runnable, "jwk-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.scheduler.scheduleWithFixedDelay(this::refreshQuietly, refreshInterval, refreshInterval, TimeUnit.SECONDS);
+        }
+        else{
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * Returns the verification algorithm for the given key ID, loading the key set if the key is unknown.
+     *
+     * @param keyId Null if the token has none.
+     * @return
+     * @throws JwkException If the key is not published, or the load is rate limited.
+     */
+    public Algorithm get(String keyId) throws JwkException{
+        if(keyId == null){
+            //Never published, and ConcurrentHashMap doesn't take null keys.
+            throw new SigningKeyNotFoundException("No key ID.", null);
+        }
+        Algorithm algorithm = this.algorithms.get(keyId);
+        if(algorithm == null){
+            synchronized(this.loadLock){
+                //Another thread may have loaded the key set while this one waited.
+                algorithm = this.algorithms.get(keyId);
+                if(algorithm == null){
+                    if(System.currentTimeMillis() - this.lastLoad < this.minLoadIntervalMillis){
+                        throw new SigningKeyNotFoundException("Unknown key ID, key set recently loaded: " + keyId, null);
+                    }
+                    this.load();
+                    algorithm = this.algorithms.get(keyId);
+                }
+            }
+            if(algorithm == null){
+                throw new SigningKeyNotFoundException("No key found for key ID: " + keyId, null);
+            }
+        }
+        return algorithm;
+    }
+
+    /**
+     * Loads the key set, replacing the cached keys. Keys that are no longer published are dropped.
+     *
+     * @throws JwkException
+     */
+    public void refresh() throws JwkException{
+        synchronized(this.loadLock){
+            this.load();
+        }
+    }
+
+    /**
+     * Refreshes the key set, logging rather than throwing on failure. The cached keys are kept if the load fails.
+     */
+    public void refreshQuietly(){
+        try{
+            this.refresh();
+        }
+        catch(JwkException | RuntimeException e){
+            LOGGER.log(Level.WARNING, "Failed to refresh JSON web keys.", e);
+        }
+    }
+
+    @Override
+    public void close(){
+        if(this.scheduler != null){
+            this.scheduler.shutdownNow();
+        }
+    }
+
+    private void load() throws JwkException{
+        this.lastLoad = System.currentTimeMillis();
+
+        Map<String, Algorithm> loaded = new HashMap<>();
+        for(Jwk jwk : this.loader.load()){
+            //A key without an ID can't be referenced by a token.
+            if(jwk.getId() != null && RSA.equals(jwk.getType()) && (jwk.getAlgorithm() == null || RS256.equals(jwk.getAlgorithm()))){
+                loaded.put(jwk.getId(), Algorithm.RSA256((RSAPublicKey) jwk.getPublicKey(), null));
+            }
+        }
+        this.algorithms.putAll(loaded);
+        this.algorithms.keySet().retainAll(loaded.keySet());
+    }
+
+    /**
+     * Source of a JSON Web Key Set.
+     */
+    @FunctionalInterface
+    public interface KeySetLoader {
+        List<Jwk> load() throws JwkException;
+    }
+
+    /**
+     * Loads a JSON Web Key Set ({"keys":[...]}) over HTTP.
+     */
+    public static class UrlKeySetLoader implements KeySetLoader {
+
+        private static final String KEYS = "keys";
+        private static final String KEY_ID = "kid";
+        private static final String KEY_TYPE = "kty";
+        private static final String ALGORITHM = "alg";
+        private static final String USE = "use";
+        private static final String X5U = "x5u";
+        private static final String X5C = "x5c";
+        private static final String X5T = "x5t";
+
+        private static final Type MAP_TYPE = new TypeToken<Map<String, Object>>(){}.getType();
+        private static final Type LIST_TYPE = new TypeToken<List<String>>(){}.getType();
+
+        private final URL url;
+        private final int connectTimeout;
+        private final int readTimeout;
+        private final Gson gson = new Gson();
+
+        /**
+         * @param url
+         * @param connectTimeout Milliseconds
+         * @param readTimeout Milliseconds
+         */
+        public UrlKeySetLoader(URL url, int connectTimeout, int readTimeout){
+            this.url = url;
+            this.connectTimeout = connectTimeout;
+            this.readTimeout = readTimeout;
+        }
+
+        @Override
+        public List<Jwk> load() throws JwkException{
+            try{
+                URLConnection connection = this.url.openConnection();
+                connection.setConnectTimeout(this.connectTimeout);
+                connection.setReadTimeout(this.readTimeout);
+                connection.setRequestProperty("Accept", "application/json");
+
+                JsonArray keys;
+                try(Reader reader = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)){
+                    keys = this.gson.fromJson(reader, JsonObject.class).getAsJsonArray(KEYS);
+                }
+                if(keys == null){
+                    throw new SigningKeyNotFoundException("No JSON web keys published at " + this.url, null);
+                }
+
+                List<Jwk> result = new ArrayList<>();
+                for(JsonElement key : keys){
+                    result.add(this.toJwk(key.getAsJsonObject()));
+                }
+                return result;
+            }
+            catch(IOException | JsonParseException | IllegalStateException e){
+                throw new SigningKeyNotFoundException("Failed to load JSON web keys from " + this.url, e);
+            }
+        }
+
+        private Jwk toJwk(JsonObject key){
+            Map<String, Object> values = this.gson.fromJson(key, MAP_TYPE);
+            Map<String, Object> attributes = new HashMap<>(values);
+            attributes.keySet().removeAll(Arrays.asList(KEY_ID, KEY_TYPE, ALGORITHM, USE, X5U, X5C, X5T));
+            return new Jwk(string(key, KEY_ID), string(key, KEY_TYPE), string(key, ALGORITHM), string(key, USE),
+                           (List<String>) null, string(key, X5U),
+                           key.has(X5C) ? this.gson.fromJson(key.get(X5C), LIST_TYPE) : null,
+                           string(key, X5T), attributes);
+        }
+
+        private static String string(JsonObject key, String name){
+            JsonElement value = key.get(name);
+            return (value == null || value.isJsonNull()) ? null : value.getAsString();
+        }
+    }
+}
@@ -1,21 +1,58 @@
 package ca.dait.opengolf.services;
 
 import ca.dait.opengolf.auth.AuthenticationTokens;
-import com.amazonaws.services.cognitoidp.AWSCognitoIdentityProvider;
-import com.amazonaws.services.cognitoidp.AWSCognitoIdentityProviderClientBuilder;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.SdkBaseException;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.retry.RetryUtils;
+import com.amazonaws.services.cognitoidp.AWSCognitoIdentityProviderAsync;
+import com.amazonaws.services.cognitoidp.AWSCognitoIdentityProviderAsyncClientBuilder;
 import com.amazonaws.services.cognitoidp.model.*;
 import com.amazonaws.util.StringUtils;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Interface to AWS Cognito service
+ *
+ * Refresh token exchanges are coalesced per refresh token. Concurrent callers share a single in-flight Cognito call
+ * and its result is reused for a few seconds, so a page load firing parallel requests with an expired ID token only
+ * refreshes once.
+ *
+ * Cognito is called with the async client on a dedicated bounded executor, with explicit connect and request
+ * timeouts. Timeouts, network errors, throttling and 5xx responses count against a circuit breaker. While the breaker
+ * is open, or the executor is saturated, calls fail fast with a ServiceUnavailableException instead of tying up
+ * servlet threads on a slow Cognito region.
  */
 @Service
 public class LoginService {
@@ -25,20 +62,88 @@ public class LoginService {
     private static final String NEW_PASSWORD = "NEW_PASSWORD";
     private static final String REFRESH_TOKEN = "REFRESH_TOKEN";
 
+    private static final String CACHE_STATS_REFRESH = "refresh";
+    private static final String METRIC_COGNITO = "opengolf.cognito";
+    private static final String METRIC_BREAKER_OPEN = "opengolf.cognito.breaker.open";
+    private static final String OPERATION_INITIATE_AUTH = "adminInitiateAuth";
+    private static final String OPERATION_RESPOND_TO_AUTH_CHALLENGE = "adminRespondToAuthChallenge";
+
+    private static final String UNAVAILABLE_MESSAGE = "Login service is unavailable, try again later.";
+
     private final String userPoolId;
     private final String userPoolClientId;
 
-    private final AWSCognitoIdentityProvider cognitoClient;
+    private final AWSCognitoIdentityProviderAsync cognitoClient;
+    private final CircuitBreaker circuitBreaker;
+    private final OperationTimer operationTimer;
+    private final Cache<String, Optional<AuthenticationTokens>> refreshCache;
 
     private static final Logger LOGGER = Logger.getLogger(LoginService.class.getName());
 
     @Autowired
     public LoginService(@Value("${ENV_USERPOOL_ID}") String userPoolId,
-                        @Value("${ENV_USERPOOL_CLIENT_ID}") String userPoolClientId) {
+                        @Value("${ENV_USERPOOL_CLIENT_ID}") String userPoolClientId,
+                        @Value("${ENV_REFRESH_CACHE_SIZE:1000}") long refreshCacheSize,
+                        @Value("${ENV_REFRESH_REUSE_TTL:10}") long refreshReuseTtl,
+                        @Value("${ENV_COGNITO_THREADS:16}") int cognitoThreads,
+                        @Value("${ENV_COGNITO_QUEUE_SIZE:64}") int cognitoQueueSize,
+                        @Value("${ENV_COGNITO_CONNECT_TIMEOUT:2000}") int cognitoConnectTimeout,
+                        @Value("${ENV_COGNITO_REQUEST_TIMEOUT:5000}") int cognitoRequestTimeout,
+                        @Value("${ENV_COGNITO_BREAKER_FAILURES:5}") int breakerFailures,
+                        @Value("${ENV_COGNITO_BREAKER_OPEN_INTERVAL:30}") long breakerOpenInterval,
+                        MeterRegistry meterRegistry) {
 
+        this(userPoolId, userPoolClientId,
+             newClient(cognitoThreads, cognitoQueueSize, cognitoConnectTimeout, cognitoRequestTimeout),
+             new CircuitBreaker("cognito", breakerFailures, breakerOpenInterval),
+             refreshCacheSize, refreshReuseTtl, meterRegistry);
+    }
+
+    LoginService(String userPoolId, String userPoolClientId, AWSCognitoIdentityProviderAsync cognitoClient,
+                 CircuitBreaker circuitBreaker, long refreshCacheSize, long refreshReuseTtl, MeterRegistry meterRegistry){
         this.userPoolId = userPoolId;
         this.userPoolClientId = userPoolClientId;
-        this.cognitoClient = AWSCognitoIdentityProviderClientBuilder.defaultClient();
+        this.cognitoClient = cognitoClient;
+        this.circuitBreaker = circuitBreaker;
+        this.refreshCache = CacheBuilder.newBuilder()
+                                        .maximumSize(refreshCacheSize)
+                                        .expireAfterWrite(refreshReuseTtl, TimeUnit.SECONDS)
+                                        .recordStats()
+                                        .build();
+
+        this.operationTimer = new OperationTimer(meterRegistry, METRIC_COGNITO);
+        GuavaCacheMetrics.monitor(meterRegistry, this.refreshCache, CACHE_STATS_REFRESH);
+        Gauge.builder(METRIC_BREAKER_OPEN, this.circuitBreaker,
+                      (breaker) -> (breaker.getState() == CircuitBreaker.State.OPEN) ? 1 : 0)
+                .register(meterRegistry);
+    }
+
+    private static AWSCognitoIdentityProviderAsync newClient(int threads, int queueSize, int connectTimeout,
+                                                             int requestTimeout){
+        ClientConfiguration clientConfiguration = new ClientConfiguration()
+                                                        .withConnectionTimeout(connectTimeout)
+                                                        .withSocketTimeout(requestTimeout)
+                                                        .withRequestTimeout(requestTimeout)
+                                                        .withClientExecutionTimeout(requestTimeout)
+                                                        .withMaxConnections(threads);
+        return AWSCognitoIdentityProviderAsyncClientBuilder.standard()
+                    .withClientConfiguration(clientConfiguration)
+                    .withExecutorFactory(() -> newExecutor(threads, queueSize))
+                    .build();
+    }
+
+    @PreDestroy
+    public void close(){
+        this.cognitoClient.shutdown();
+    }
+
+    /**
+     * Hit, miss and eviction counters of the refresh token exchange cache, keyed by cache name.
+     *
+     * @return
+     */
+    public Map<String, CacheStats> getCacheStats(){
+        return ImmutableMap.of(CACHE_STATS_REFRESH, this.refreshCache.stats());
     }
 
     /**
@@ -48,7 +153,7 @@ public class LoginService {
      * @param password  Password
      * @return          Users authentication tokens.
      */
-    public AuthenticationTokens login(String username, String password){
+    public CompletableFuture<AuthenticationTokens> login(String username, String password){
         Map<String, String> authParams = new HashMap<>();
         authParams.put(USERNAME, username);
         authParams.put(PASSWORD, password);
@@ -59,18 +164,18 @@ public class LoginService {
         authRequest.setClientId(this.userPoolClientId);
         authRequest.withAuthFlow(AuthFlowType.ADMIN_NO_SRP_AUTH);
 
-        AdminInitiateAuthResult result = this.cognitoClient.adminInitiateAuth(authRequest);
-
-        if(StringUtils.isNullOrEmpty(result.getChallengeName())){
-            AuthenticationResultType resultType = result.getAuthenticationResult();
-            return new AuthenticationTokens(resultType.getIdToken(), resultType.getRefreshToken());
-        }
-        else if(ChallengeNameType.NEW_PASSWORD_REQUIRED.toString().equals(result.getChallengeName())){
-            throw new UserNotConfirmedException("User not confirmed. Complete confirm flow.");
-        }
-        else{
-            throw new UnsupportedUserStateException("User contains unsupported challenge name. Contact your administrator.");
-        }
+        return this.initiateAuth(authRequest).thenApply((result) -> {
+            if(StringUtils.isNullOrEmpty(result.getChallengeName())){
+                AuthenticationResultType resultType = result.getAuthenticationResult();
+                return new AuthenticationTokens(resultType.getIdToken(), resultType.getRefreshToken());
+            }
+            else if(ChallengeNameType.NEW_PASSWORD_REQUIRED.toString().equals(result.getChallengeName())){
+                throw new UserNotConfirmedException("User not confirmed. Complete confirm flow.");
+            }
+            else{
+                throw new UnsupportedUserStateException("User contains unsupported challenge name. Contact your administrator.");
+            }
+        });
     }
 
     /**
@@ -81,7 +186,7 @@ public class LoginService {
      * @param newPassword  New Password
      * @return          Users authentication tokens.
      */
-    public AuthenticationTokens confirmRegistration(String username, String password, String newPassword){
+    public CompletableFuture<AuthenticationTokens> confirmRegistration(String username, String password, String newPassword){
         Map<String, String> authParams = new HashMap<>();
         authParams.put(USERNAME, username);
         authParams.put(PASSWORD, password);
@@ -92,18 +197,22 @@ public class LoginService {
         authRequest.setClientId(this.userPoolClientId);
         authRequest.withAuthFlow(AuthFlowType.ADMIN_NO_SRP_AUTH);
 
-        AdminInitiateAuthResult result = this.cognitoClient.adminInitiateAuth(authRequest);
-
-        if(ChallengeNameType.NEW_PASSWORD_REQUIRED.toString().equals(result.getChallengeName())){
-            authParams.put(NEW_PASSWORD, newPassword);
-            AdminRespondToAuthChallengeRequest challengeRequest = new AdminRespondToAuthChallengeRequest()
-                    .withChallengeName(ChallengeNameType.NEW_PASSWORD_REQUIRED)
-                    .withChallengeResponses(authParams)
-                    .withUserPoolId(this.userPoolId)
-                    .withClientId(this.userPoolClientId)
-                    .withSession(result.getSession());
+        return this.initiateAuth(authRequest).thenCompose((result) -> {
+            if(ChallengeNameType.NEW_PASSWORD_REQUIRED.toString().equals(result.getChallengeName())){
+                authParams.put(NEW_PASSWORD, newPassword);
+                AdminRespondToAuthChallengeRequest challengeRequest = new AdminRespondToAuthChallengeRequest()
+                        .withChallengeName(ChallengeNameType.NEW_PASSWORD_REQUIRED)
+                        .withChallengeResponses(authParams)
+                        .withUserPoolId(this.userPoolId)
+                        .withClientId(this.userPoolClientId)
+                        .withSession(result.getSession());
 
-            AdminRespondToAuthChallengeResult challengeResult = this.cognitoClient.adminRespondToAuthChallenge(challengeRequest);
+                return this.respondToAuthChallenge(challengeRequest);
+            }
+            else{
+                throw new UnsupportedUserStateException("User is not in the correct state. Contact your administrator.");
+            }
+        }).thenApply((challengeResult) -> {
             if(StringUtils.isNullOrEmpty(challengeResult.getChallengeName())){
                 AuthenticationResultType resultType = challengeResult.getAuthenticationResult();
                 return new AuthenticationTokens(resultType.getIdToken(), resultType.getRefreshToken());
@@ -111,19 +220,35 @@ public class LoginService {
             else{
                 throw new UserNotConfirmedException("Unable to confirm user. Contact your administrator.");
             }
-        }
-        else{
-            throw new UnsupportedUserStateException("User is not in the correct state. Contact your administrator.");
-        }
+        });
     }
 
     /**
-     * Attempts to get new ID and refresh tokens from AWS cognito with the provided refresh token.
+     * Attempts to get new ID and refresh tokens from AWS cognito with the provided refresh token. Concurrent calls
+     * with the same refresh token wait for and share a single exchange, and its result is reused until the refresh
+     * cache entry expires. Failed exchanges are not cached.
      *
      * @param refreshToken
      * @return
      */
     public AuthenticationTokens refreshTokens(String refreshToken){
+        String key = Hashing.sha256().hashString(refreshToken, StandardCharsets.UTF_8).toString();
+        try{
+            return this.refreshCache.get(key, () -> Optional.ofNullable(this.exchangeRefreshToken(refreshToken)))
+                                    .orElse(null);
+        }
+        catch(ExecutionException | UncheckedExecutionException | ExecutionError e){
+            if(e.getCause() instanceof RuntimeException){
+                throw (RuntimeException) e.getCause();
+            }
+            if(e.getCause() instanceof Error){
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private AuthenticationTokens exchangeRefreshToken(String refreshToken){
         Map<String, String> authParams = new HashMap<>();
         authParams.put(REFRESH_TOKEN, refreshToken);
 
@@ -133,7 +258,7 @@ public class LoginService {
         authRequest.setClientId(this.userPoolClientId);
         authRequest.withAuthFlow(AuthFlowType.REFRESH_TOKEN_AUTH);
 
-        AdminInitiateAuthResult result = this.cognitoClient.adminInitiateAuth(authRequest);
+        AdminInitiateAuthResult result = join(this.initiateAuth(authRequest));
 
         if(StringUtils.isNullOrEmpty(result.getChallengeName())){
             AuthenticationResultType resultType = result.getAuthenticationResult();
@@ -144,4 +269,114 @@ public class LoginService {
             return null;
         }
     }
+
+    private CompletableFuture<AdminInitiateAuthResult> initiateAuth(AdminInitiateAuthRequest request){
+        return this.operationTimer.async(OPERATION_INITIATE_AUTH,
+                                         () -> this.call(request, this.cognitoClient::adminInitiateAuthAsync));
+    }
+
+    private CompletableFuture<AdminRespondToAuthChallengeResult> respondToAuthChallenge(AdminRespondToAuthChallengeRequest request){
+        return this.operationTimer.async(OPERATION_RESPOND_TO_AUTH_CHALLENGE,
+                                         () -> this.call(request, this.cognitoClient::adminRespondToAuthChallengeAsync));
+    }
+
+    /**
+     * Runs an asynchronous Cognito call through the circuit breaker. Fails fast with a ServiceUnavailableException
+     * while the breaker is open or the Cognito executor is saturated. Outages (timeouts, network errors, throttling
+     * and 5xx responses) are reported as a ServiceUnavailableException, any other Cognito error is passed through.
+     *
+     * @param request   Cognito request
+     * @param method    Async client method to invoke with the request.
+     * @return
+     */
+    private <Q extends AmazonWebServiceRequest, R> CompletableFuture<R> call(Q request,
+                                                                             BiFunction<Q, AsyncHandler<Q, R>, Future<R>> method){
+        CompletableFuture<R> future = new CompletableFuture<>();
+        if(!this.circuitBreaker.allowRequest()){
+            future.completeExceptionally(new ServiceUnavailableException(UNAVAILABLE_MESSAGE));
+            return future;
+        }
+        try{
+            method.apply(request, new AsyncHandler<Q, R>() {
+                @Override
+                public void onError(Exception e) {
+                    if(isOutage(e)){
+                        circuitBreaker.recordFailure();
+                        future.completeExceptionally(new ServiceUnavailableException(UNAVAILABLE_MESSAGE, e));
+                    }
+                    else{
+                        circuitBreaker.recordSuccess();
+                        future.completeExceptionally(e);
+                    }
+                }
+
+                @Override
+                public void onSuccess(Q request, R result) {
+                    circuitBreaker.recordSuccess();
+                    future.complete(result);
+                }
+            });
+        }
+        catch(RejectedExecutionException e){
+            //Executor saturated, not a Cognito failure. Release the breaker if this was its trial call.
+            if(this.circuitBreaker.getState() == CircuitBreaker.State.HALF_OPEN){
+                this.circuitBreaker.recordFailure();
+            }
+            future.completeExceptionally(new ServiceUnavailableException(UNAVAILABLE_MESSAGE, e));
+        }
+        catch(RuntimeException e){
+            //The call never started so the handler won't report it, without an outcome the breaker would stay
+            //HALF_OPEN for good.
+            this.circuitBreaker.recordFailure();
+            future.completeExceptionally(new ServiceUnavailableException(UNAVAILABLE_MESSAGE, e));
+        }
+        return future;
+    }
+
+    private static boolean isOutage(Exception e){
+        if(e instanceof AmazonServiceException){
+            AmazonServiceException serviceException = (AmazonServiceException) e;
+            SdkBaseException sdkException = serviceException;
+            return serviceException.getErrorType() == AmazonServiceException.ErrorType.Service ||
+                   RetryUtils.isThrottlingException(sdkException);
+        }
+        //Client side failures: timeouts, connection errors, etc...
+        return true;
+    }
+
+    static ThreadPoolExecutor newExecutor(int threads, int queueSize){
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                (runnable) -> {
+                    Thread thread = new Thread(runnable, "cognito-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Waits on the given future, unwrapping runtime exceptions thrown while completing it.
+     *
+     * @param future
+     * @return
+     */
+    private static <V> V join(CompletableFuture<V> future){
+        try{
+            return future.get();
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException(UNAVAILABLE_MESSAGE, e);
+        }
+        catch(ExecutionException e){
+            if(e.getCause() instanceof RuntimeException){
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
 }
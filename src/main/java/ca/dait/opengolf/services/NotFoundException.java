@@ -0,0 +1,15 @@
+package ca.dait.opengolf.services;
+
+/**
+ * Thrown when a request targets a resource that doesn't exist.
+ */
+public class NotFoundException extends RuntimeException {
+
+    public NotFoundException(String message){
+        super(message);
+    }
+
+    public NotFoundException(String message, Throwable cause){
+        super(message, cause);
+    }
+}
@@ -0,0 +1,112 @@
+package ca.dait.opengolf.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Times the operations of a service as a single timer metric, tagged with the operation name and its outcome:
+ * success, unavailable (rejected or failed fast, see {@link ServiceUnavailableException}) or error.
+ */
+public class OperationTimer {
+
+    public static final String TAG_OPERATION = "operation";
+    public static final String TAG_OUTCOME = "outcome";
+
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_UNAVAILABLE = "unavailable";
+    public static final String OUTCOME_ERROR = "error";
+
+    private final MeterRegistry registry;
+    private final String name;
+
+    /**
+     * @param registry
+     * @param name Timer metric name.
+     */
+    public OperationTimer(MeterRegistry registry, String name){
+        this.registry = registry;
+        this.name = name;
+    }
+
+    /**
+     * Times an asynchronous operation until its future completes.
+     *
+     * @param operation
+     * @param call
+     * @return
+     */
+    public <T> CompletableFuture<T> async(String operation, Supplier<CompletableFuture<T>> call){
+        Timer.Sample sample = this.start();
+        CompletableFuture<T> future;
+        try{
+            future = call.get();
+        }
+        catch(RuntimeException e){
+            this.stop(sample, operation, outcome(e));
+            throw e;
+        }
+        return future.whenComplete((result, e) -> this.stop(sample, operation, outcome(e)));
+    }
+
+    /**
+     * Times a blocking operation.
+     *
+     * @param operation
+     * @param call
+     * @return
+     * @throws E
+     */
+    public <T, E extends Exception> T sync(String operation, Call<T, E> call) throws E{
+        Timer.Sample sample = this.start();
+        String outcome = OUTCOME_ERROR;
+        try{
+            T result = call.call();
+            outcome = OUTCOME_SUCCESS;
+            return result;
+        }
+        catch(ServiceUnavailableException e){
+            outcome = OUTCOME_UNAVAILABLE;
+            throw e;
+        }
+        finally{
+            this.stop(sample, operation, outcome);
+        }
+    }
+
+    public Timer.Sample start(){
+        return Timer.start(this.registry);
+    }
+
+    /**
+     * Records the sample with an explicit outcome.
+     *
+     * @param sample
+     * @param operation
+     * @param outcome
+     */
+    public void stop(Timer.Sample sample, String operation, String outcome){
+        sample.stop(this.registry.timer(this.name, TAG_OPERATION, operation, TAG_OUTCOME, outcome));
+    }
+
+    private static String outcome(Throwable e){
+        if(e instanceof CompletionException && e.getCause() != null){
+            e = e.getCause();
+        }
+        if(e == null){
+            return OUTCOME_SUCCESS;
+        }
+        return (e instanceof ServiceUnavailableException) ? OUTCOME_UNAVAILABLE : OUTCOME_ERROR;
+    }
+
+    /**
+     * Blocking operation.
+     */
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+}
@@ -0,0 +1,15 @@
+package ca.dait.opengolf.services;
+
+/**
+ * Thrown when a request is rejected because a backing service is overloaded or unavailable.
+ */
+public class ServiceUnavailableException extends RuntimeException {
+
+    public ServiceUnavailableException(String message){
+        super(message);
+    }
+
+    public ServiceUnavailableException(String message, Throwable cause){
+        super(message, cause);
+    }
+}
@@ -0,0 +1,214 @@
+package ca.dait.opengolf.services;
+
+import org.elasticsearch.common.geo.GeoUtils;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Grid of fixed size lat/lon cells indexing courses by the cells their holes fall in. Answers nearest neighbour
+ * queries by visiting cells in rings around the search co-ordinates. Not thread safe, see EmbeddedCourseRepository.
+ */
+class SpatialGrid {
+
+    private final double cellSize;
+    private final int latCells;
+    private final int lonCells;
+
+    private final Map<Long, Set<String>> cells = new HashMap<>();
+    private final Map<String, HoleGeometry> geometries = new HashMap<>();
+    private final NavigableSet<String> unlocated = new TreeSet<>();
+
+    /**
+     * @param cellSize Cell width and height in degrees.
+     */
+    SpatialGrid(double cellSize){
+        this.cellSize = cellSize;
+        this.latCells = (int) Math.ceil(180 / cellSize);
+        this.lonCells = (int) Math.ceil(360 / cellSize);
+    }
+
+    void add(String id, HoleGeometry geometry){
+        this.geometries.put(id, geometry);
+        if(!geometry.isLocated()){
+            this.unlocated.add(id);
+            return;
+        }
+        for(int i = 0; i < geometry.size(); i++){
+            if(!geometry.located(i)){
+                continue;
+            }
+            this.cells.computeIfAbsent(this.key(this.latCell(geometry.lat(i)), this.lonCell(geometry.lon(i))),
+                                       (key) -> new HashSet<>())
+                      .add(id);
+        }
+    }
+
+    void remove(String id){
+        HoleGeometry geometry = this.geometries.remove(id);
+        if(geometry == null){
+            return;
+        }
+        this.unlocated.remove(id);
+        for(int i = 0; i < geometry.size(); i++){
+            if(!geometry.located(i)){
+                continue;
+            }
+            Long key = this.key(this.latCell(geometry.lat(i)), this.lonCell(geometry.lon(i)));
+            Set<String> cell = this.cells.get(key);
+            if(cell != null && cell.remove(id) && cell.isEmpty()){
+                this.cells.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Every course with a hole position in ascending distance from its nearest hole to the given co-ordinates, ties
+     * broken by ID. Courses without one are left out, see unlocated().
+     *
+     * @param lat
+     * @param lon
+     * @return
+     */
+    Iterator<Neighbour> nearest(double lat, double lon){
+        return new NearestIterator(lat, lon);
+    }
+
+    /**
+     * IDs of the courses without a hole position, in order, after the given ID.
+     *
+     * @param after ID to start after, null for all of them.
+     * @return
+     */
+    Iterator<String> unlocated(String after){
+        return ((after == null) ? this.unlocated : this.unlocated.tailSet(after, false)).iterator();
+    }
+
+    private int latCell(double lat){
+        return Math.min(this.latCells - 1, Math.max(0, (int) Math.floor((lat + 90) / this.cellSize)));
+    }
+
+    private int lonCell(double lon){
+        return Math.floorMod((int) Math.floor((lon + 180) / this.cellSize), this.lonCells);
+    }
+
+    private long key(int latCell, int lonCell){
+        return (long) latCell * this.lonCells + lonCell;
+    }
+
+    static class Neighbour {
+        final String id;
+        final double distance;
+
+        Neighbour(String id, double distance){
+            this.id = id;
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * Visits ring r of cells (those r cells away from the search cell) at a time. A course found is only returned
+     * once no unvisited cell can hold a hole closer than it. Once a ring would hold more cells than are occupied, the
+     * remaining occupied cells are visited at once.
+     */
+    private class NearestIterator implements Iterator<Neighbour> {
+
+        private final double lat;
+        private final double lon;
+        private final int latCell;
+        private final int lonCell;
+
+        private final Set<String> seen = new HashSet<>();
+        private final PriorityQueue<Neighbour> queue = new PriorityQueue<>(Comparator.<Neighbour>comparingDouble((n) -> n.distance)
+                                                                                 .thenComparing((n) -> n.id));
+        private int ring = -1;
+        private double bound = -1;
+
+        NearestIterator(double lat, double lon){
+            this.lat = lat;
+            this.lon = lon;
+            this.latCell = SpatialGrid.this.latCell(lat);
+            this.lonCell = SpatialGrid.this.lonCell(lon);
+        }
+
+        @Override
+        public boolean hasNext(){
+            while(this.bound < Double.POSITIVE_INFINITY && (this.queue.isEmpty() || this.queue.peek().distance > this.bound)){
+                this.expand();
+            }
+            return !this.queue.isEmpty();
+        }
+
+        @Override
+        public Neighbour next(){
+            if(!this.hasNext()){
+                throw new NoSuchElementException();
+            }
+            return this.queue.poll();
+        }
+
+        private void expand(){
+            this.ring++;
+            if(8L * this.ring >= SpatialGrid.this.cells.size() || 2 * this.ring + 1 >= SpatialGrid.this.lonCells){
+                SpatialGrid.this.cells.values().forEach(this::visit);
+                this.bound = Double.POSITIVE_INFINITY;
+                return;
+            }
+            for(int dLat = -this.ring; dLat <= this.ring; dLat++){
+                int step = (Math.abs(dLat) == this.ring) ? 1 : 2 * this.ring;
+                for(int dLon = -this.ring; dLon <= this.ring; dLon += step){
+                    int cellLat = this.latCell + dLat;
+                    if(cellLat >= 0 && cellLat < SpatialGrid.this.latCells){
+                        Set<String> cell = SpatialGrid.this.cells.get(SpatialGrid.this.key(cellLat,
+                                                    Math.floorMod(this.lonCell + dLon, SpatialGrid.this.lonCells)));
+                        if(cell != null){
+                            this.visit(cell);
+                        }
+                    }
+                }
+            }
+            this.bound = this.bound(this.ring);
+        }
+
+        private void visit(Set<String> cell){
+            for(String id : cell){
+                if(this.seen.add(id)){
+                    this.queue.add(new Neighbour(id, SpatialGrid.this.geometries.get(id).nearestDistance(this.lat, this.lon)));
+                }
+            }
+        }
+
+        /**
+         * Lower bound, in meters, on the distance to any point outside the cells visited up to the given ring.
+         *
+         * @param ring
+         * @return
+         */
+        private double bound(int ring){
+            double size = SpatialGrid.this.cellSize;
+            double south = (this.latCell - ring) * size - 90;
+            double north = (this.latCell + ring + 1) * size - 90;
+            //Longitude wraps, measure from the search co-ordinates' offset within their cell.
+            double offset = (this.lon + 180) - Math.floor((this.lon + 180) / size) * size;
+
+            double latGap = Math.min((south <= -90) ? Double.POSITIVE_INFINITY : this.lat - south,
+                                     (north >= 90) ? Double.POSITIVE_INFINITY : north - this.lat);
+            double lonGap = Math.min(offset + ring * size, (ring + 1) * size - offset);
+
+            //Points past the east or west edge are at least lonGap degrees of longitude away, closest at the highest
+            //latitude of the visited band: sin(d/2R) >= cos(lat) * sin(lonGap/2)
+            double maxLat = Math.toRadians(Math.min(90, Math.max(Math.abs(south), Math.abs(north))));
+            double lonDistance = 2 * GeoUtils.EARTH_MEAN_RADIUS *
+                                    Math.asin(Math.cos(maxLat) * Math.sin(Math.toRadians(lonGap) / 2));
+            return Math.min(GeoUtils.EARTH_MEAN_RADIUS * Math.toRadians(latGap), lonDistance);
+        }
+    }
+}
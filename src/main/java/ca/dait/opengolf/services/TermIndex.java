@@ -0,0 +1,166 @@
+package ca.dait.opengolf.services;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Inverted index over the text fields of course documents, scored like the fuzzy multi_match query of
+ * ElasticsearchCourseRepository: terms are matched within an AUTO edit distance, a field scores the sum of its
+ * matched terms and a course the best of its fields. Not thread safe, see EmbeddedCourseRepository.
+ */
+class TermIndex {
+
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+
+    private final String[] fields;
+    private final Map<String, Map<String, Set<String>>> postings = new HashMap<>();
+    private int documents;
+
+    TermIndex(String[] fields){
+        this.fields = fields;
+        for(String field : fields){
+            this.postings.put(field, new HashMap<>());
+        }
+    }
+
+    void add(String id, JsonObject document){
+        this.documents++;
+        for(String field : this.fields){
+            Map<String, Set<String>> terms = this.postings.get(field);
+            for(String term : tokenize(document.get(field))){
+                terms.computeIfAbsent(term, (key) -> new HashSet<>()).add(id);
+            }
+        }
+    }
+
+    void remove(String id, JsonObject document){
+        this.documents--;
+        for(String field : this.fields){
+            Map<String, Set<String>> terms = this.postings.get(field);
+            for(String term : tokenize(document.get(field))){
+                Set<String> ids = terms.get(term);
+                if(ids != null && ids.remove(id) && ids.isEmpty()){
+                    terms.remove(term);
+                }
+            }
+        }
+    }
+
+    /**
+     * Scores the courses matching any term of the given text.
+     *
+     * @param text
+     * @return Score by course ID, null if the text holds no terms (it matches every course).
+     */
+    Map<String, Float> search(String text){
+        List<String> query = tokenize(text);
+        if(query.isEmpty()){
+            return null;
+        }
+        Map<String, Float> scores = new HashMap<>();
+        for(String field : this.fields){
+            Map<String, Float> fieldScores = new HashMap<>();
+            for(String term : query){
+                //A fuzzy term can expand to several indexed terms, a course only scores its best match.
+                Map<String, Float> termScores = new HashMap<>();
+                int maxEdits = fuzziness(term);
+                for(Map.Entry<String, Set<String>> posting : this.postings.get(field).entrySet()){
+                    int edits = editDistance(term, posting.getKey(), maxEdits);
+                    if(edits <= maxEdits){
+                        float score = this.idf(posting.getValue().size()) * (1f - (float) edits / term.length());
+                        for(String id : posting.getValue()){
+                            termScores.merge(id, score, Math::max);
+                        }
+                    }
+                }
+                termScores.forEach((id, score) -> fieldScores.merge(id, score, Float::sum));
+            }
+            fieldScores.forEach((id, score) -> scores.merge(id, score, Math::max));
+        }
+        return scores;
+    }
+
+    private float idf(int frequency){
+        return (float) Math.log(1 + (this.documents - frequency + 0.5) / (frequency + 0.5));
+    }
+
+    private static List<String> tokenize(JsonElement value){
+        return (value != null && value.isJsonPrimitive()) ? tokenize(value.getAsString()) : new ArrayList<>();
+    }
+
+    /**
+     * Lower cased runs of letters and digits, as split by the standard analyzer.
+     *
+     * @param text
+     * @return
+     */
+    static List<String> tokenize(String text){
+        List<String> terms = new ArrayList<>();
+        for(String term : TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT))){
+            if(!term.isEmpty()){
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Edits allowed by AUTO fuzziness: none up to 2 characters, 1 up to 5 and 2 beyond.
+     *
+     * @param term
+     * @return
+     */
+    private static int fuzziness(String term){
+        return (term.length() <= 2) ? 0 : (term.length() <= 5) ? 1 : 2;
+    }
+
+    /**
+     * Edit distance counting insertions, deletions, substitutions and transpositions of adjacent characters.
+     *
+     * @param a
+     * @param b
+     * @param max
+     * @return The distance, or max + 1 as soon as it's known to exceed max.
+     */
+    static int editDistance(String a, String b, int max){
+        if(Math.abs(a.length() - b.length()) > max){
+            return max + 1;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        int[] next = new int[b.length() + 1];
+        for(int j = 0; j <= b.length(); j++){
+            current[j] = j;
+        }
+        for(int i = 1; i <= a.length(); i++){
+            next[0] = i;
+            int rowMin = i;
+            for(int j = 1; j <= b.length(); j++){
+                int cost = (a.charAt(i - 1) == b.charAt(j - 1)) ? 0 : 1;
+                int distance = Math.min(Math.min(next[j - 1] + 1, current[j] + 1), current[j - 1] + cost);
+                if(i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)){
+                    distance = Math.min(distance, previous[j - 2] + 1);
+                }
+                next[j] = distance;
+                rowMin = Math.min(rowMin, distance);
+            }
+            if(rowMin > max){
+                return max + 1;
+            }
+            int[] rotate = previous;
+            previous = current;
+            current = next;
+            next = rotate;
+        }
+        return Math.min(current[b.length()], max + 1);
+    }
+}
@@ -0,0 +1,104 @@
+package ca.dait.opengolf.controllers;
+
+import ca.dait.opengolf.services.CourseChangePage;
+import ca.dait.opengolf.services.CourseHit;
+import ca.dait.opengolf.services.CourseService;
+import ca.dait.opengolf.services.JsonBody;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CourseControllerTest {
+
+    private static final CourseHit HIT = CourseHit.of("1", "{\"facilityName\":\"Glencairn\"}".getBytes(StandardCharsets.UTF_8));
+    private static final String ETAG = HIT.etag();
+
+    private CourseController controller;
+
+    @Before
+    public void setUp(){
+        this.controller = new CourseController();
+        this.controller.courseService = new CourseService(null, 1, 1, 1, 1, 6, 5, new SimpleMeterRegistry()){
+            @Override
+            public CompletableFuture<CourseHit> getHitAsync(String id){
+                return CompletableFuture.completedFuture(id.equals(HIT.id) ? HIT : null);
+            }
+
+            @Override
+            public CompletableFuture<CourseChangePage> changesAsync(Long since, Integer size, String cursor){
+                return CompletableFuture.completedFuture(new CourseChangePage(Collections.emptyList(), null, 0));
+            }
+        };
+        this.controller.courseCacheControl = "public, max-age=300";
+        this.controller.searchCacheControl = "public, max-age=60";
+    }
+
+    @Test
+    public void etagIsAQuotedContentHash(){
+        assertTrue(ETAG, ETAG.matches("\"[0-9a-f]{32}\""));
+        assertEquals(ETAG, CourseHit.of("2", "{\"facilityName\":\"Glencairn\"}".getBytes(StandardCharsets.UTF_8)).etag());
+        assertFalse(ETAG.equals(CourseHit.of("1", "{\"facilityName\":\"Glen\"}".getBytes(StandardCharsets.UTF_8)).etag()));
+    }
+
+    @Test
+    public void ifNoneMatchIsComparedWeakly(){
+        assertTrue(CourseController.matches(ETAG, ETAG));
+        assertTrue(CourseController.matches("W/" + ETAG, ETAG));
+        assertTrue(CourseController.matches("\"other\", W/" + ETAG, ETAG));
+        assertTrue(CourseController.matches("\"other\" ,  " + ETAG + " ", ETAG));
+        assertTrue(CourseController.matches("*", ETAG));
+    }
+
+    @Test
+    public void ifNoneMatchMustHoldTheTag(){
+        assertFalse(CourseController.matches(null, ETAG));
+        assertFalse(CourseController.matches("", ETAG));
+        assertFalse(CourseController.matches("\"other\"", ETAG));
+        //Tags are quoted, the bare hash isn't the tag.
+        assertFalse(CourseController.matches(ETAG.replace("\"", ""), ETAG));
+        assertFalse(CourseController.matches(ETAG.toUpperCase(), ETAG));
+    }
+
+    @Test
+    public void matchingGetIsNotModifiedWithoutABody(){
+        ResponseEntity<JsonBody> response = this.controller.get("1", "W/" + ETAG).join();
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+        assertEquals(ETAG, response.getHeaders().getETag());
+        assertEquals("public, max-age=300", response.getHeaders().getCacheControl());
+    }
+
+    @Test
+    public void staleGetIsServedWithTheTag(){
+        ResponseEntity<JsonBody> response = this.controller.get("1", "\"other\"").join();
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        assertEquals(ETAG, response.getHeaders().getETag());
+        assertEquals("public, max-age=300", response.getHeaders().getFirst(HttpHeaders.CACHE_CONTROL));
+    }
+
+    @Test
+    public void changesAreAlwaysRevalidated(){
+        assertEquals("no-cache", this.controller.changes(0L, null, null).join().getHeaders().getCacheControl());
+    }
+
+    @Test
+    public void missingCourseIsNotFound(){
+        assertEquals(HttpStatus.NOT_FOUND, this.controller.get("2", ETAG).join().getStatusCode());
+    }
+}
@@ -0,0 +1,210 @@
+package ca.dait.opengolf.controllers;
+
+import ca.dait.opengolf.services.CourseService;
+import ca.dait.opengolf.services.EmbeddedCourseRepository;
+import com.google.gson.Gson;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RoundSocketHandlerTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private RoundSocketHandler handler;
+
+    @Before
+    public void setUp() throws IOException{
+        Path snapshot = this.folder.newFile("courses.json").toPath();
+        Files.write(snapshot, Arrays.asList(
+                "{\"remoteId\":\"located\",\"facilityName\":\"Glencairn North\",\"holes\":[{\"lat\":43.50,\"lon\":-79.90}]}",
+                "{\"remoteId\":\"holeless\",\"facilityName\":\"Glencairn East\"}"),
+                    StandardCharsets.UTF_8);
+        CourseService courseService = new CourseService(new EmbeddedCourseRepository(snapshot.toString()),
+                                                        100, 60, 100, 60, 6, 5, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(courseService, "gson", new Gson());
+
+        //A single reply fills the send buffer.
+        this.handler = new RoundSocketHandler(courseService, 60000, 1, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(this.handler, "gson", new Gson());
+    }
+
+    @Test
+    public void courseWithoutHolePositionsIsAnError(){
+        StubSession session = new StubSession("holeless", null);
+        this.handler.afterConnectionEstablished(session);
+        this.handler.handleTextMessage(session, new TextMessage("{\"lat\":43.5,\"lon\":-79.9}"));
+
+        assertEquals(Collections.singletonList("{\"error\":\"Course has no hole positions.\"}"), session.sent);
+        assertNull(session.closeStatus);
+    }
+
+    @Test
+    public void clientTooSlowForItsRepliesIsClosed() throws Exception{
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        StubSession session = new StubSession("located", () -> {
+            sending.countDown();
+            release.await(10, TimeUnit.SECONDS);
+        });
+        this.handler.afterConnectionEstablished(session);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try{
+            Future<?> first = executor.submit(() -> this.handler.handleTextMessage(session, new TextMessage("{\"lat\":43.5,\"lon\":-79.9}")));
+            assertTrue(sending.await(10, TimeUnit.SECONDS));
+
+            //Buffered behind the send in flight, over the buffer size.
+            this.handler.handleTextMessage(session, new TextMessage("{\"lat\":43.5,\"lon\":-79.9}"));
+            assertEquals(CloseStatus.SESSION_NOT_RELIABLE, session.closeStatus);
+
+            release.countDown();
+            first.get(10, TimeUnit.SECONDS);
+        }
+        finally{
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private interface Send {
+        void run() throws InterruptedException;
+    }
+
+    private static class StubSession implements WebSocketSession {
+        private final URI uri;
+        private final Send send;
+        private final Map<String, Object> attributes = new HashMap<>();
+        private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        private volatile CloseStatus closeStatus;
+
+        StubSession(String courseId, Send send){
+            this.uri = URI.create("ws://localhost/api/course/" + courseId + "/round");
+            this.send = send;
+        }
+
+        @Override
+        public String getId(){
+            return "1";
+        }
+
+        @Override
+        public URI getUri(){
+            return this.uri;
+        }
+
+        @Override
+        public HttpHeaders getHandshakeHeaders(){
+            return new HttpHeaders();
+        }
+
+        @Override
+        public Map<String, Object> getAttributes(){
+            return this.attributes;
+        }
+
+        @Override
+        public Principal getPrincipal(){
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress(){
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress(){
+            return null;
+        }
+
+        @Override
+        public String getAcceptedProtocol(){
+            return null;
+        }
+
+        @Override
+        public void setTextMessageSizeLimit(int messageSizeLimit){
+        }
+
+        @Override
+        public int getTextMessageSizeLimit(){
+            return 0;
+        }
+
+        @Override
+        public void setBinaryMessageSizeLimit(int messageSizeLimit){
+        }
+
+        @Override
+        public int getBinaryMessageSizeLimit(){
+            return 0;
+        }
+
+        @Override
+        public List<WebSocketExtension> getExtensions(){
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException{
+            if(this.send != null){
+                try{
+                    this.send.run();
+                }
+                catch(InterruptedException e){
+                    throw new IOException(e);
+                }
+            }
+            this.sent.add(((TextMessage) message).getPayload());
+        }
+
+        @Override
+        public boolean isOpen(){
+            return this.closeStatus == null;
+        }
+
+        @Override
+        public void close(){
+            this.close(CloseStatus.NORMAL);
+        }
+
+        @Override
+        public void close(CloseStatus status){
+            this.closeStatus = status;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package ca.dait.opengolf.services;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CourseJsonTest {
+
+    private static final String COURSE = "{\"facilityName\":\"Glencairn\",\"state\":\"ON\",\"holes\":[{\"lat\":43.5,\"lon\":-79.9}]}";
+
+    @Test
+    public void remoteIdIsSplicedInFrontOfTheSourceMembers() throws IOException{
+        String json = write(CourseJson.searchResult(new CourseSearchPage(Collections.singletonList(hit("1", COURSE)), null),
+                                                    null, null, false));
+
+        assertEquals("{\"results\":[{\"remoteId\":\"1\",\"facilityName\":\"Glencairn\",\"state\":\"ON\"," +
+                     "\"holes\":[{\"lat\":43.5,\"lon\":-79.9}]}]}", json);
+    }
+
+    @Test
+    public void splicingKeepsSourcesValidWhateverTheirWhitespace() throws IOException{
+        CourseSearchPage page = new CourseSearchPage(Arrays.asList(hit("empty", "{}"),
+                                                                   hit("blank", " {\n } "),
+                                                                   hit("spaced", "\n{ \"state\" : \"ON\" }\n"),
+                                                                   hit("quoted", "{\"nickName\":\"\\\"The\\\" {Club}\"}")),
+                                                     "next");
+        JsonObject result = parse(write(CourseJson.searchResult(page, null, null, false)));
+
+        JsonArray results = result.getAsJsonArray("results");
+        assertEquals(4, results.size());
+        assertEquals(1, results.get(0).getAsJsonObject().size());
+        assertEquals("blank", results.get(1).getAsJsonObject().get("remoteId").getAsString());
+        assertEquals("ON", results.get(2).getAsJsonObject().get("state").getAsString());
+        assertEquals("\"The\" {Club}", results.get(3).getAsJsonObject().get("nickName").getAsString());
+        assertEquals("next", result.get("cursor").getAsString());
+    }
+
+    @Test
+    public void locatedResultsCarryTheDistanceToTheNearestHole() throws IOException{
+        CourseHit located = hit("located", COURSE);
+        CourseSearchPage page = new CourseSearchPage(Arrays.asList(located, hit("holeless", "{\"state\":\"ON\"}")), null);
+        JsonArray results = parse(write(CourseJson.searchResult(page, 43.6, -79.9, false))).getAsJsonArray("results");
+
+        assertEquals(located.geometry.nearestDistance(43.6, -79.9),
+                     results.get(0).getAsJsonObject().get("distance").getAsDouble(), 1e-9);
+        assertFalse(results.get(1).getAsJsonObject().has("distance"));
+    }
+
+    @Test
+    public void summaryResultsOnlyHoldTheSummaryFields() throws IOException{
+        CourseSearchPage page = new CourseSearchPage(Collections.singletonList(hit("1", COURSE)), null);
+        JsonObject course = parse(write(CourseJson.searchResult(page, null, null, true))).getAsJsonArray("results")
+                                                                                            .get(0).getAsJsonObject();
+
+        assertEquals("1", course.get("remoteId").getAsString());
+        assertEquals("Glencairn", course.get("facilityName").getAsString());
+        assertFalse(course.has("holes"));
+    }
+
+    @Test
+    public void batchResultListsTheMissingCourses() throws IOException{
+        Map<String, CourseHit> hits = new LinkedHashMap<>();
+        hits.put("gone", null);
+        hits.put("2", hit("2", "{\"state\":\"BC\"}"));
+        hits.put("1", hit("1", COURSE));
+        hits.put("also-gone", null);
+
+        assertEquals("{\"results\":[{\"remoteId\":\"2\",\"state\":\"BC\"},{\"remoteId\":\"1\",\"facilityName\":\"Glencairn\"," +
+                     "\"state\":\"ON\",\"holes\":[{\"lat\":43.5,\"lon\":-79.9}]}],\"missing\":[\"gone\",\"also-gone\"]}",
+                     write(CourseJson.batchResult(hits, false)));
+    }
+
+    @Test
+    public void batchResultAlwaysHasTheMissingMember() throws IOException{
+        assertEquals("{\"results\":[{\"remoteId\":\"1\",\"facilityName\":\"Glencairn\",\"state\":\"ON\"}],\"missing\":[]}",
+                     write(CourseJson.batchResult(Collections.singletonMap("1", hit("1", COURSE)), true)));
+    }
+
+    @Test
+    public void changesResultCarriesTombstonesAndTheUpperBound() throws IOException{
+        CourseChangePage page = new CourseChangePage(Arrays.asList(hit("1", "{\"modified\":5}"), CourseHit.tombstone("2", 6)),
+                                                     null, 1546300800000L);
+
+        assertEquals("{\"results\":[{\"remoteId\":\"1\",\"modified\":5},{\"remoteId\":\"2\",\"modified\":6,\"deleted\":true}]," +
+                     "\"until\":1546300800000}", write(CourseJson.changesResult(page)));
+    }
+
+    @Test
+    public void changesResultHasTheCursorOfTheNextPage() throws IOException{
+        CourseChangePage page = new CourseChangePage(Collections.emptyList(), "WzEsMiwiMyJd", 1546300800000L);
+
+        assertEquals("{\"results\":[],\"cursor\":\"WzEsMiwiMyJd\",\"until\":1546300800000}",
+                     write(CourseJson.changesResult(page)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sourceMustBeAnObject() throws IOException{
+        write(CourseJson.searchResult(new CourseSearchPage(Collections.singletonList(
+                new CourseHit("1", "[]".getBytes(StandardCharsets.UTF_8), HoleGeometry.EMPTY)), null), null, null, false));
+    }
+
+    private static CourseHit hit(String id, String source){
+        return CourseHit.of(id, source.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String write(JsonBody body) throws IOException{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        String json = out.toString(StandardCharsets.UTF_8.name());
+        assertTrue(json, new JsonParser().parse(json).isJsonObject());
+        return json;
+    }
+
+    private static JsonObject parse(String json){
+        return new JsonParser().parse(json).getAsJsonObject();
+    }
+}
@@ -0,0 +1,133 @@
+package ca.dait.opengolf.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class CoursePackServiceTest {
+
+    private static final CourseRegion ONTARIO = CourseRegion.of(null, "ca", "on");
+    private static final CourseRegion BRITISH_COLUMBIA = CourseRegion.of(null, "ca", "bc");
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger builds = new AtomicInteger();
+    private volatile CountDownLatch blocked;
+    private EmbeddedCourseRepository repository;
+
+    @Before
+    public void setUp() throws IOException{
+        Path snapshot = this.folder.newFile("courses.json").toPath();
+        Files.write(snapshot, Arrays.asList(
+                "{\"remoteId\":\"1\",\"facilityName\":\"Glencairn\",\"country\":\"CA\",\"state\":\"ON\",\"holes\":[{\"lat\":43.5,\"lon\":-79.9}]}",
+                "{\"remoteId\":\"2\",\"facilityName\":\"Shaughnessy\",\"country\":\"CA\",\"state\":\"BC\",\"holes\":[{\"lat\":49.2,\"lon\":-123.2}]}"),
+                    StandardCharsets.UTF_8);
+        this.repository = new EmbeddedCourseRepository(snapshot.toString()){
+            @Override
+            public CompletableFuture<Page> region(CourseRegion region, int size, Object[] searchAfter){
+                if(searchAfter == null){
+                    builds.incrementAndGet();
+                    if(blocked != null){
+                        try{
+                            blocked.await();
+                        }
+                        catch(InterruptedException e){
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }
+                return super.region(region, size, searchAfter);
+            }
+        };
+    }
+
+    @Test
+    public void packIsReusedUntilInvalidated() throws IOException{
+        CoursePackService packs = this.packService(10, 2);
+        String name = packs.getPack(ONTARIO);
+
+        assertNotNull(packs.getPackFile(name));
+        assertEquals(name, packs.getPack(ONTARIO));
+        assertEquals(1, this.builds.get());
+
+        packs.invalidateAll();
+        //Rebuilt, the region hasn't changed so neither has its pack.
+        assertEquals(name, packs.getPack(ONTARIO));
+        assertEquals(2, this.builds.get());
+
+        this.repository.update("1", "{\"facilityName\":\"Glencairn Golf Club\"}");
+        packs.invalidateAll();
+        assertNotEquals(name, packs.getPack(ONTARIO));
+    }
+
+    @Test(timeout = 30000)
+    public void buildsOverTheLimitFailFast() throws Exception{
+        CoursePackService packs = this.packService(10, 1);
+        this.blocked = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try{
+            Future<String> building = executor.submit(() -> packs.getPack(ONTARIO));
+            while(this.builds.get() == 0){
+                Thread.sleep(10);
+            }
+            try{
+                packs.getPack(BRITISH_COLUMBIA);
+                throw new AssertionError("Expected the build to be rejected.");
+            }
+            catch(ServiceUnavailableException e){
+                //Expected
+            }
+
+            this.blocked.countDown();
+            assertNotNull(packs.getPackFile(building.get(10, TimeUnit.SECONDS)));
+            //Rejections aren't cached.
+            assertNotNull(packs.getPackFile(packs.getPack(BRITISH_COLUMBIA)));
+        }
+        finally{
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void oldestFilesOverTheMaximumAreDeleted() throws IOException{
+        CoursePackService packs = this.packService(1, 2);
+        String ontario = packs.getPack(ONTARIO);
+        Path file = packs.getPackFile(ontario);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 60000));
+
+        String britishColumbia = packs.getPack(BRITISH_COLUMBIA);
+        assertNull(packs.getPackFile(ontario));
+        assertNotNull(packs.getPackFile(britishColumbia));
+
+        //The region isn't sent to the deleted file.
+        assertNotNull(packs.getPackFile(packs.getPack(ONTARIO)));
+        assertEquals(3, this.builds.get());
+    }
+
+    private CoursePackService packService(int maxFiles, int maxBuilds) throws IOException{
+        return new CoursePackService(this.repository, this.folder.newFolder().toString(), 3600, maxFiles, maxBuilds,
+                                     new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,118 @@
+package ca.dait.opengolf.services;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CoursePackWriterTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void packRoundTrips() throws IOException{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(CoursePackWriter writer = new CoursePackWriter(this.folder.getRoot().toPath())){
+            writer.add(hit("1", "{\"facilityName\":\"Glencairn\",\"state\":\"ON\",\"modified\":1546300800123," +
+                                "\"holes\":[{\"lat\":43.5,\"lon\":-79.9},{\"lat\":43.4999995,\"lon\":-79.8}]}"));
+            writer.add(hit("2", "{\"facilityName\":\"Shaughnessy\",\"state\":\"ON\",\"modified\":null," +
+                                "\"holes\":[{\"lat\":49.2,\"lon\":-123.2},{\"number\":2},null,{\"lat\":49.3,\"lon\":-123.1}]}"));
+            writer.add(hit("3", "{\"country\":\"Fiji\",\"modified\":-5,\"holes\":[{\"lat\":-17.8,\"lon\":179.9999},{\"lat\":-17.8,\"lon\":-179.9999}]}"));
+            writer.writeTo(out);
+        }
+        //The spill file is deleted once the pack is written.
+        assertArrayEquals(new String[0], this.folder.getRoot().list());
+
+        InputStream in = new ByteArrayInputStream(out.toByteArray());
+        byte[] magic = new byte[4];
+        assertEquals(4, in.read(magic));
+        assertArrayEquals(new byte[]{'O', 'G', 'P', 1}, magic);
+
+        List<String> strings = new ArrayList<>();
+        for(long i = readVarint(in); i > 0; i--){
+            byte[] bytes = new byte[(int) readVarint(in)];
+            assertEquals(bytes.length, in.read(bytes));
+            strings.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        List<String> fields = new ArrayList<>();
+        for(long i = readVarint(in); i > 0; i--){
+            fields.add(strings.get((int) readVarint(in)));
+        }
+        assertEquals(Arrays.asList(CourseHit.SUMMARY_FIELDS), fields);
+
+        assertEquals(3, readVarint(in));
+        assertCourse(in, strings, "1", 1546300800123L, new String[]{"Glencairn", null, null, "ON", null},
+                     43.5, -79.9, 43.4999995, -79.8);
+        //The second and third holes have no position.
+        assertCourse(in, strings, "2", 0, new String[]{"Shaughnessy", null, null, "ON", null},
+                     49.2, -123.2, Double.NaN, Double.NaN, Double.NaN, Double.NaN, 49.3, -123.1);
+        assertCourse(in, strings, "3", -5, new String[]{null, null, null, null, "Fiji"},
+                     -17.8, 179.9999, -17.8, -179.9999);
+        assertEquals(-1, in.read());
+
+        //Strings are stored once.
+        assertEquals(strings.size(), strings.stream().distinct().count());
+    }
+
+    private static void assertCourse(InputStream in, List<String> strings, String id, long modified, String[] values,
+                                     double... holes) throws IOException{
+        assertEquals(id, strings.get((int) readVarint(in)));
+        assertEquals(modified, readSigned(in));
+        for(String value : values){
+            long index = readVarint(in);
+            assertEquals(value, (index == 0) ? null : strings.get((int) index - 1));
+        }
+        assertEquals(holes.length / 2, readVarint(in));
+        Set<Long> unlocated = new HashSet<>();
+        for(long i = readVarint(in); i > 0; i--){
+            unlocated.add(readVarint(in));
+        }
+        long lat = 0;
+        long lon = 0;
+        for(int i = 0; i < holes.length; i += 2){
+            assertEquals(Double.isNaN(holes[i]), unlocated.contains((long) i / 2));
+            if(unlocated.contains((long) i / 2)){
+                continue;
+            }
+            lat += readSigned(in);
+            lon += readSigned(in);
+            //Microdegrees
+            assertEquals(holes[i], lat / 1e6, 0.5e-6);
+            assertEquals(holes[i + 1], lon / 1e6, 0.5e-6);
+        }
+    }
+
+    private static CourseHit hit(String id, String source){
+        return CourseHit.of(id, source.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long readSigned(InputStream in) throws IOException{
+        long value = readVarint(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long readVarint(InputStream in) throws IOException{
+        long value = 0;
+        for(int shift = 0; ; shift += 7){
+            int b = in.read();
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0){
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ca.dait.opengolf.services;
+
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CourseRegionTest {
+
+    @Test
+    public void bboxIsSnappedOutward(){
+        assertArrayEquals(new double[]{43.0, -80.0, 44.0, -79.5}, CourseRegion.of("43.2,-79.9,43.7,-79.6", null, null).bbox, 0);
+        assertArrayEquals(new double[]{43.5, -80.0, 43.5, -79.5}, CourseRegion.of("43.5,-80,43.5,-79.5", null, null).bbox, 0);
+        assertArrayEquals(new double[]{-90.0, -180.0, 90.0, 180.0}, CourseRegion.of("-89.9,-179.9,89.9,179.9", null, null).bbox, 0);
+    }
+
+    @Test
+    public void nearbyBoxesShareAKey(){
+        String key = CourseRegion.of("43.2,-79.9,43.7,-79.6", null, null).key();
+
+        assertEquals("bbox:43.0,-80.0,44.0,-79.5", key);
+        assertEquals(key, CourseRegion.of("43.000001, -79.51, 43.51, -79.500001", null, null).key());
+        assertEquals("bbox:43.0,-80.0,44.0,-79.0", CourseRegion.of("43.2,-79.9,43.7,-79.4", null, null).key());
+    }
+
+    @Test
+    public void negativeZeroIsZero(){
+        assertEquals(CourseRegion.of("0,0,0,0", null, null).key(), CourseRegion.of("-0.0,-0.0,-0.0,-0.0", null, null).key());
+        assertEquals("bbox:-0.5,-0.5,0.0,0.0", CourseRegion.of("-0.1,-0.1,-0.1,-0.1", null, null).key());
+    }
+
+    @Test
+    public void countryAndStateAreNormalized(){
+        CourseRegion region = CourseRegion.of(null, " CA ", "on");
+
+        assertNull(region.bbox);
+        assertEquals("country:ca|state:on", region.key());
+        assertEquals(region.key(), CourseRegion.of(null, "ca", "ON").key());
+        assertEquals("country:|state:on", CourseRegion.of(null, "", "ON").key());
+    }
+
+    @Test
+    public void countryAndStateMatchAsPhrases(){
+        JsonObject course = new JsonObject();
+        course.addProperty("country", "United States");
+        course.addProperty("state", "North Carolina");
+
+        assertTrue(CourseRegion.of(null, "united states", "Carolina").contains(course, HoleGeometry.EMPTY));
+        assertTrue(CourseRegion.of(null, null, "north-carolina").contains(course, HoleGeometry.EMPTY));
+        assertFalse(CourseRegion.of(null, "states united", null).contains(course, HoleGeometry.EMPTY));
+        assertFalse(CourseRegion.of(null, null, "north dakota").contains(course, HoleGeometry.EMPTY));
+        assertFalse(CourseRegion.of(null, "united", null).contains(new JsonObject(), HoleGeometry.EMPTY));
+        assertEquals(CourseRegion.of(null, "north-carolina", null).key(), CourseRegion.of(null, "North Carolina", null).key());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void regionIsEitherABboxOrAPlace(){
+        CourseRegion.of("43,-80,44,-79", "ca", null);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void regionIsRequired(){
+        CourseRegion.of(null, " ", null);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void bboxCornersAreOrdered(){
+        CourseRegion.of("44,-80,43,-79", null, null);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void bboxIsInRange(){
+        CourseRegion.of("43,-181,44,-79", null, null);
+    }
+}
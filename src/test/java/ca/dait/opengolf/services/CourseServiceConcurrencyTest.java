@@ -0,0 +1,137 @@
+package ca.dait.opengolf.services;
+
+import com.google.gson.Gson;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * The get and search paths hold no thread while the repository works: thousands of requests can be in flight from a
+ * single calling thread, and are completed later by the repository's own threads.
+ */
+public class CourseServiceConcurrencyTest {
+
+    private static final int REQUESTS = 5000;
+
+    private final Queue<CompletableFuture<?>> pending = new ConcurrentLinkedQueue<>();
+    private final Queue<Runnable> completions = new ConcurrentLinkedQueue<>();
+    private ExecutorService repositoryThreads;
+    private CourseService courseService;
+
+    @Before
+    public void setUp(){
+        this.courseService = new CourseService(new DeferredRepository(), REQUESTS, 60, REQUESTS, 60, 6, 5, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(this.courseService, "gson", new Gson());
+        this.repositoryThreads = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown(){
+        this.repositoryThreads.shutdownNow();
+    }
+
+    @Test(timeout = 30000)
+    public void getsAreInFlightWithoutHoldingTheCaller() throws Exception{
+        List<CompletableFuture<CourseHit>> gets = new ArrayList<>();
+        for(int i = 0; i < REQUESTS; i++){
+            gets.add(this.courseService.getHitAsync("course-" + i));
+        }
+        //Every request returned to the caller while none of them has been answered.
+        assertEquals(REQUESTS, this.pending.size());
+        gets.forEach((get) -> assertFalse(get.isDone()));
+
+        this.completeOnRepositoryThreads();
+        for(int i = 0; i < REQUESTS; i++){
+            assertEquals("course-" + i, gets.get(i).get(10, TimeUnit.SECONDS).id);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void searchesAreInFlightWithoutHoldingTheCaller() throws Exception{
+        List<CompletableFuture<CourseSearchPage>> searches = new ArrayList<>();
+        for(int i = 0; i < REQUESTS; i++){
+            searches.add(this.courseService.searchPageAsync("term" + i, null, null, null, null));
+        }
+        assertEquals(REQUESTS, this.pending.size());
+        searches.forEach((search) -> assertFalse(search.isDone()));
+
+        this.completeOnRepositoryThreads();
+        for(int i = 0; i < REQUESTS; i++){
+            assertEquals("term" + i, searches.get(i).get(10, TimeUnit.SECONDS).hits.get(0).id);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void concurrentCallersShareTheRepositoryThreads() throws Exception{
+        ExecutorService callers = Executors.newFixedThreadPool(16);
+        Queue<CompletableFuture<CourseHit>> gets = new ConcurrentLinkedQueue<>();
+        try{
+            for(int i = 0; i < REQUESTS; i++){
+                String id = "course-" + i;
+                callers.execute(() -> gets.add(this.courseService.getHitAsync(id)));
+            }
+            callers.shutdown();
+            callers.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        finally{
+            callers.shutdownNow();
+        }
+        assertEquals(REQUESTS, gets.size());
+
+        this.completeOnRepositoryThreads();
+        CompletableFuture.allOf(gets.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * A future completed with the given value once the test releases it, on a repository thread.
+     */
+    private <T> CompletableFuture<T> later(T value){
+        CompletableFuture<T> future = new CompletableFuture<>();
+        this.pending.add(future);
+        this.completions.add(() -> future.complete(value));
+        return future;
+    }
+
+    private void completeOnRepositoryThreads(){
+        Runnable completion;
+        while((completion = this.completions.poll()) != null){
+            this.repositoryThreads.execute(completion);
+        }
+    }
+
+    /**
+     * Answers gets and searches with a hit named after the ID or search term, once the test releases it.
+     */
+    private class DeferredRepository extends StubCourseRepository {
+
+        @Override
+        public CompletableFuture<CourseHit> get(String id){
+            return later(hit(id));
+        }
+
+        @Override
+        public CompletableFuture<Page> search(String searchTerm, Double lat, Double lon, int size, Object[] searchAfter){
+            return later(new Page(Collections.singletonList(hit(searchTerm)), null));
+        }
+
+        private CourseHit hit(String id){
+            return CourseHit.of(id, "{}".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
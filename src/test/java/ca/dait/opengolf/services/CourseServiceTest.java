@@ -0,0 +1,263 @@
+package ca.dait.opengolf.services;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CourseServiceTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Object[]> searchAfters = new ArrayList<>();
+    private final List<List<String>> multiGets = new ArrayList<>();
+    private final List<Object[]> changesAfters = new ArrayList<>();
+    private final List<Long> changesUntils = new ArrayList<>();
+    private Object[] next;
+    private CourseService courseService;
+
+    @Before
+    public void setUp(){
+        this.courseService = new CourseService(new PagingRepository(), 100, 60, 100, 60, 6, 5, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(this.courseService, "gson", new Gson());
+    }
+
+    @Test
+    public void searchCursorRoundTripsTheSortKey(){
+        this.next = new Object[]{0.4273f, 1523.25, "AV1x-9_zZ"};
+        String cursor = this.courseService.searchPageAsync("glencairn", 43.5, -79.9, 10, null).join().cursor;
+        this.courseService.searchPageAsync("glencairn", 43.5, -79.9, 10, cursor).join();
+
+        assertNull(this.searchAfters.get(0));
+        assertSortKey(this.next, this.searchAfters.get(1));
+    }
+
+    @Test
+    public void searchCursorRoundTripsTheDistanceOfACourseWithoutHoles(){
+        this.next = new Object[]{0f, Double.POSITIVE_INFINITY, "holeless"};
+        String cursor = this.courseService.searchPageAsync(null, 43.5, -79.9, 10, null).join().cursor;
+        this.courseService.searchPageAsync(null, 43.5, -79.9, 10, cursor).join();
+
+        assertSortKey(this.next, this.searchAfters.get(1));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void cursorMustBeBase64(){
+        this.courseService.searchPageAsync("glencairn", null, null, 10, "not a cursor!");
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void cursorMustBeAnArray(){
+        this.courseService.searchPageAsync("glencairn", null, null, 10, "e30");
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void cursorMustNotBeEmpty(){
+        this.courseService.searchPageAsync("glencairn", null, null, 10, "W10");
+    }
+
+    @Test
+    public void changesCursorRoundTripsTheSortKeyAndUpperBound(){
+        for(long modified : new long[]{1546300800123L, Long.MIN_VALUE}){
+            this.next = new Object[]{modified, "AV1x-9_zZ"};
+            CourseChangePage first = this.courseService.changesAsync(0L, 10, null).join();
+            CourseChangePage second = this.courseService.changesAsync(null, 10, first.cursor).join();
+
+            assertEquals(first.until, second.until);
+            assertEquals(first.until, (long) this.changesUntils.get(this.changesUntils.size() - 1));
+            Object[] searchAfter = this.changesAfters.get(this.changesAfters.size() - 1);
+            //Courses written before modification times were stamped sort first, at Long.MIN_VALUE.
+            assertEquals(modified, searchAfter[0]);
+            assertEquals("AV1x-9_zZ", searchAfter[1]);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void syncStaysBehindABulkWriteHeldInTheRepository() throws Exception{
+        HeldBulkRepository repository = new HeldBulkRepository();
+        CourseService courseService = new CourseService(repository, 100, 60, 100, 60, 6, 5, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(courseService, "gson", new Gson());
+        ReflectionTestUtils.setField(courseService, "coursePackService",
+                new CoursePackService(repository, this.folder.newFolder().toString(), 3600, 10, 2, new SimpleMeterRegistry()));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try{
+            Future<CourseBulkResult> bulk = executor.submit(() -> courseService.bulkAdd(
+                    Stream.of("{\"remoteId\":\"1\",\"facilityName\":\"Glencairn\"}")));
+            repository.stamped.await();
+
+            //The course is stamped but not visible yet, a sync now must end before its stamp.
+            long now = System.currentTimeMillis();
+            long until = courseService.changesAsync(0L, 10, null).join().until;
+            assertEquals(until, (long) repository.untils.get(0));
+            assertTrue(until + " < " + repository.stamp, until < repository.stamp);
+            //The sync trails by the repository's lag and ENV_CHANGES_DELAY.
+            assertTrue(until >= now - HeldBulkRepository.LAG - TimeUnit.SECONDS.toMillis(5));
+            assertTrue(until <= System.currentTimeMillis() - HeldBulkRepository.LAG - TimeUnit.SECONDS.toMillis(5));
+
+            repository.released.countDown();
+            assertEquals(1, bulk.get(10, TimeUnit.SECONDS).getIndexed());
+        }
+        finally{
+            repository.released.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void changesCursorMustHoldTheUpperBound(){
+        //A search cursor, [0.5, "1"]
+        this.courseService.changesAsync(null, 10, "WzAuNSwiMSJd");
+    }
+
+    @Test
+    public void batchCollapsesDuplicatesAndKeepsTheGivenOrder(){
+        Map<String, CourseHit> hits = this.courseService.getHitsAsync(Arrays.asList("2", "gone", "1", "2")).join();
+
+        assertEquals(Arrays.asList("2", "gone", "1"), new ArrayList<>(hits.keySet()));
+        assertNull(hits.get("gone"));
+        assertEquals("1", hits.get("1").id);
+        assertEquals(Collections.singletonList(Arrays.asList("2", "gone", "1")), this.multiGets);
+    }
+
+    @Test
+    public void batchOnlyReadsCoursesMissingFromTheCache(){
+        this.courseService.getHitsAsync(Arrays.asList("1", "gone")).join();
+        Map<String, CourseHit> hits = this.courseService.getHitsAsync(Arrays.asList("gone", "1", "3")).join();
+
+        assertEquals(Arrays.asList("gone", "1", "3"), new ArrayList<>(hits.keySet()));
+        assertNull(hits.get("gone"));
+        assertEquals("3", hits.get("3").id);
+        //Missing courses are cached too.
+        assertEquals(Arrays.asList(Arrays.asList("1", "gone"), Collections.singletonList("3")), this.multiGets);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void batchIsCapped(){
+        List<String> ids = new ArrayList<>();
+        for(int i = 0; i <= 100; i++){
+            ids.add(Integer.toString(i));
+        }
+        this.courseService.getHitsAsync(ids);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void batchNeedsAnId(){
+        this.courseService.getHitsAsync(Collections.emptyList());
+    }
+
+    /**
+     * Cursor values are read back as JSON numbers, or strings for infinite values, compared the way ElasticSearch
+     * parses them.
+     */
+    private static void assertSortKey(Object[] expected, Object[] actual){
+        assertEquals(expected.length, actual.length);
+        for(int i = 0; i < expected.length; i++){
+            if(expected[i] instanceof Float){
+                assertEquals((Float) expected[i], Float.parseFloat(actual[i].toString()), 0);
+            }
+            else if(expected[i] instanceof Double){
+                assertEquals((Double) expected[i], Double.parseDouble(actual[i].toString()), 0);
+            }
+            else{
+                assertEquals(expected[i], actual[i]);
+            }
+        }
+    }
+
+    /**
+     * Holds a bulk write, after stamping its document, until the test releases it. The write becomes visible LAG
+     * after it's stamped.
+     */
+    private static class HeldBulkRepository extends StubCourseRepository {
+
+        private static final long LAG = TimeUnit.MINUTES.toMillis(2);
+
+        private final CountDownLatch stamped = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+        private final List<Long> untils = new ArrayList<>();
+        private volatile long stamp;
+
+        @Override
+        public long changesLag(){
+            return LAG;
+        }
+
+        @Override
+        public CompletableFuture<Page> changes(Long since, long until, int size, Object[] searchAfter){
+            this.untils.add(until);
+            return CompletableFuture.completedFuture(new Page(Collections.emptyList(), null));
+        }
+
+        @Override
+        public void bulkIndex(Iterator<CourseDocument> documents, CourseBulkResult result){
+            CourseDocument document = documents.next();
+            this.stamp = new JsonParser().parse(document.source).getAsJsonObject().get(FIELD_MODIFIED).getAsLong();
+            this.stamped.countDown();
+            try{
+                this.released.await();
+            }
+            catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+            result.indexed();
+        }
+    }
+
+    /**
+     * Answers every search with a single hit, and {@link #next} as the sort key of the next page. Changes are answered
+     * the same way. Multi gets find every course but "gone".
+     */
+    private class PagingRepository extends StubCourseRepository {
+
+        @Override
+        public CompletableFuture<Page> search(String searchTerm, Double lat, Double lon, int size, Object[] searchAfter){
+            searchAfters.add(searchAfter);
+            return CompletableFuture.completedFuture(new Page(Collections.singletonList(
+                    CourseHit.of("1", "{}".getBytes(StandardCharsets.UTF_8))), next));
+        }
+
+        @Override
+        public CompletableFuture<Page> changes(Long since, long until, int size, Object[] searchAfter){
+            changesAfters.add(searchAfter);
+            changesUntils.add(until);
+            return CompletableFuture.completedFuture(new Page(Collections.singletonList(
+                    CourseHit.tombstone("1", 5)), next));
+        }
+
+        @Override
+        public CompletableFuture<Map<String, CourseHit>> getAll(Collection<String> ids){
+            multiGets.add(new ArrayList<>(ids));
+            Map<String, CourseHit> found = new HashMap<>();
+            ids.stream().filter((id) -> !id.equals("gone"))
+                        .forEach((id) -> found.put(id, CourseHit.of(id, "{}".getBytes(StandardCharsets.UTF_8))));
+            return CompletableFuture.completedFuture(found);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package ca.dait.opengolf.services;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ElasticsearchCourseRepositoryTest {
+
+    @Test
+    public void searchWithCoordinatesNeverUsesAScript(){
+        Random random = new Random(42);
+        Set<String> sources = new HashSet<>();
+        for(int i = 0; i < 5000; i++){
+            double lat = random.nextDouble() * 180 - 90;
+            double lon = random.nextDouble() * 360 - 180;
+            String source = ElasticsearchCourseRepository.searchSource((i % 2 == 0) ? null : "glencairn",
+                                                                       lat, lon, 50, null).toString();
+            assertFalse(source, source.contains("script"));
+            assertTrue(source, source.contains("_geo_distance"));
+            sources.add(source);
+        }
+        //Every request carries its own co-ordinates as parameters.
+        assertEquals(5000, sources.size());
+    }
+
+    @Test
+    public void searchWithoutCoordinatesHasNoDistanceSort(){
+        String source = ElasticsearchCourseRepository.searchSource("glencairn", null, null, 50, null).toString();
+        assertFalse(source, source.contains("script"));
+        assertFalse(source, source.contains("_geo_distance"));
+    }
+
+    @Test
+    public void coursesWithoutHolesScoreZeroInALocatedSearch(){
+        JsonObject query = new JsonParser().parse(ElasticsearchCourseRepository.searchSource("glencairn", 43.5, -79.9, 50, null)
+                                                                               .toString())
+                                           .getAsJsonObject().getAsJsonObject("query").getAsJsonObject("function_score");
+        JsonArray functions = query.getAsJsonArray("functions");
+        assertEquals(2, functions.size());
+        assertTrue(functions.get(0).getAsJsonObject().has("exp"));
+
+        JsonObject holeless = functions.get(1).getAsJsonObject();
+        assertEquals(0, holeless.get("weight").getAsFloat(), 0);
+        assertEquals("holes", holeless.getAsJsonObject("filter").getAsJsonObject("bool").getAsJsonArray("must_not")
+                                      .get(0).getAsJsonObject().getAsJsonObject("exists").get("field").getAsString());
+        //Functions multiply, so the zero weight zeroes the score of courses it matches.
+        assertEquals("multiply", query.get("score_mode").getAsString());
+    }
+
+    @Test
+    public void changesLagCoversTheBulkPathAndTheRefresh(){
+        long lag = ElasticsearchCourseRepository.changesLag(5, 30000);
+        //Flush interval, three requests: one in flight ahead of the document, the flush waiting for a slot and its own
+        //request, the refresh, and the backoff delays of rejected requests.
+        assertTrue(Long.toString(lag), lag > 5000 + 3 * 30000 + 1000);
+        assertTrue(Long.toString(lag), lag < 5000 + 3 * 30000 + 1000 + 10000);
+        assertEquals(5000, ElasticsearchCourseRepository.changesLag(10, 30000) - lag);
+    }
+}
@@ -0,0 +1,119 @@
+package ca.dait.opengolf.services;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class EmbeddedCourseRepositoryTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private EmbeddedCourseRepository repository;
+
+    @Before
+    public void setUp() throws IOException{
+        Path snapshot = this.folder.newFile("courses.json").toPath();
+        Files.write(snapshot, Arrays.asList(
+                "{\"remoteId\":\"near\",\"facilityName\":\"Glencairn North\",\"holes\":[{\"lat\":43.50,\"lon\":-79.90}]}",
+                "{\"remoteId\":\"far\",\"facilityName\":\"Glencairn South\",\"holes\":[{\"lat\":42.00,\"lon\":-79.90}]}",
+                "{\"remoteId\":\"holeless-b\",\"facilityName\":\"Glencairn East\"}",
+                "{\"remoteId\":\"holeless-a\",\"facilityName\":\"Glencairn West\",\"holes\":[]}"),
+                    StandardCharsets.UTF_8);
+        this.repository = new EmbeddedCourseRepository(snapshot.toString());
+    }
+
+    @Test
+    public void coursesWithoutHolesScoreZeroAndSortLast(){
+        for(String searchTerm : new String[]{"glencairn", null}){
+            CourseRepository.Page page = this.repository.search(searchTerm, 43.5, -79.9, 10, null).join();
+            assertEquals(Arrays.asList("near", "far", "holeless-a", "holeless-b"), ids(page.hits));
+
+            page = this.repository.search(searchTerm, 43.5, -79.9, 4, null).join();
+            assertEquals(0f, ((Number) page.next[0]).floatValue(), 0);
+        }
+    }
+
+    @Test
+    public void pagesOfALocatedSearchCoverEveryCourseOnce(){
+        for(String searchTerm : new String[]{"glencairn", null}){
+            List<String> ids = new ArrayList<>();
+            Object[] searchAfter = null;
+            do{
+                CourseRepository.Page page = this.repository.search(searchTerm, 43.5, -79.9, 1, searchAfter).join();
+                ids.addAll(ids(page.hits));
+                searchAfter = page.next;
+            }
+            while(searchAfter != null);
+            assertEquals(Arrays.asList("near", "far", "holeless-a", "holeless-b"), ids);
+        }
+    }
+
+    @Test
+    public void cursorsPastTheGridMatchElasticsearch(){
+        CourseRepository.Page page = this.repository.search(null, 43.5, -79.9, 3, null).join();
+        assertEquals(Arrays.asList(0f, Double.POSITIVE_INFINITY, "holeless-a"), Arrays.asList(page.next));
+
+        //Cursors come back with the distance as the string "Infinity".
+        page = this.repository.search(null, 43.5, -79.9, 3, new Object[]{0.0, "Infinity", "holeless-a"}).join();
+        assertEquals(Collections.singletonList("holeless-b"), ids(page.hits));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void cursorWithANonNumericDistanceIsInvalid(){
+        this.repository.search(null, 43.5, -79.9, 3, new Object[]{0.0, "far", "holeless-a"});
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void updateOfAMissingCourseIsNotFound(){
+        this.repository.update("missing", "{\"facilityName\":\"Glencairn\"}");
+    }
+
+    @Test
+    public void deleteLeavesATombstoneOnlyForACourseThatExisted() throws IOException{
+        this.repository.delete("near", 10);
+        this.repository.delete("missing", 11);
+        this.repository.delete("near", 12);
+
+        CourseRepository.Page page = this.repository.changes(0L, 20, 10, null).join();
+        assertEquals(Collections.singletonList("near"), ids(page.hits));
+        assertEquals("{\"modified\":10,\"deleted\":true}", new String(page.hits.get(0).source, StandardCharsets.UTF_8));
+        assertNull(this.repository.get("near").join());
+    }
+
+    @Test
+    public void changesPageOverCoursesWithoutAModificationTime(){
+        List<String> ids = new ArrayList<>();
+        Object[] searchAfter = null;
+        do{
+            CourseRepository.Page page = this.repository.changes(null, 20, 1, searchAfter).join();
+            ids.addAll(ids(page.hits));
+            searchAfter = page.next;
+            if(searchAfter != null){
+                //The snapshot isn't stamped, its courses sort first.
+                assertEquals(Long.MIN_VALUE, searchAfter[0]);
+            }
+        }
+        while(searchAfter != null);
+        assertEquals(Arrays.asList("far", "holeless-a", "holeless-b", "near"), ids);
+    }
+
+    private static List<String> ids(List<CourseHit> hits){
+        List<String> ids = new ArrayList<>();
+        hits.forEach((hit) -> ids.add(hit.id));
+        return ids;
+    }
+}
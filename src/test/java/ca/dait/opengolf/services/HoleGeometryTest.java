@@ -0,0 +1,83 @@
+package ca.dait.opengolf.services;
+
+import com.google.gson.stream.JsonReader;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HoleGeometryTest {
+
+    @Test
+    public void readsHolesInOrder() throws IOException{
+        StringBuilder json = new StringBuilder("[");
+        for(int i = 0; i < 27; i++){
+            json.append((i == 0) ? "" : ",").append("{\"number\":").append(i).append(",\"lat\":").append(i)
+                .append(",\"lon\":").append(-i).append('}');
+        }
+        HoleGeometry holes = read(json.append(']').toString());
+
+        assertEquals(27, holes.size());
+        for(int i = 0; i < 27; i++){
+            assertEquals(i, holes.lat(i), 0);
+            assertEquals(-i, holes.lon(i), 0);
+        }
+    }
+
+    @Test
+    public void holesWithoutAPositionKeepTheirSlot() throws IOException{
+        HoleGeometry holes = read("[{\"lat\":44.1},{\"lon\":-79.1},{\"lat\":null,\"lon\":-79.2},null,7,{\"lat\":44.3,\"lon\":-79.3}]");
+
+        assertEquals(6, holes.size());
+        for(int i = 0; i < 5; i++){
+            assertFalse(holes.located(i));
+            assertTrue(Double.isNaN(holes.lat(i)) && Double.isNaN(holes.lon(i)));
+        }
+        assertTrue(holes.located(5));
+        assertTrue(holes.isLocated());
+        assertEquals(44.3, holes.lat(5), 0);
+        assertEquals(-79.3, holes.lon(5), 0);
+    }
+
+    @Test
+    public void holeNumbersSurviveAGap() throws IOException{
+        HoleGeometry holes = read("[{\"lat\":44.1,\"lon\":-79.1},{\"number\":2},{\"lat\":44.3,\"lon\":-79.3}]");
+
+        assertEquals(3, holes.size());
+        //The third hole, not the second.
+        assertEquals(2, holes.nearestHole(44.31, -79.31));
+        assertEquals(0, holes.nearestHole(44.2, -79.1));
+        assertEquals(holes.distance(2, 44.31, -79.31), holes.nearestDistance(44.31, -79.31), 0);
+        assertTrue(Double.isNaN(holes.distance(1, 44.31, -79.31)));
+    }
+
+    @Test
+    public void holesWithoutAnyPositionHaveNoNearestHole() throws IOException{
+        HoleGeometry holes = read("[{\"lat\":44.1},null]");
+
+        assertEquals(2, holes.size());
+        assertFalse(holes.isLocated());
+        assertEquals(-1, holes.nearestHole(44.1, -79.1));
+        assertNull(holes.nearestDistance(44.1, -79.1));
+    }
+
+    @Test
+    public void nonArrayIsACourseWithoutHoles() throws IOException{
+        assertSame(HoleGeometry.EMPTY, read("null"));
+        assertSame(HoleGeometry.EMPTY, read("{\"lat\":44.1,\"lon\":-79.1}"));
+        assertSame(HoleGeometry.EMPTY, read("[]"));
+        assertFalse(HoleGeometry.EMPTY.isLocated());
+    }
+
+    private static HoleGeometry read(String json) throws IOException{
+        JsonReader in = new JsonReader(new StringReader(json));
+        in.setLenient(true);
+        return HoleGeometry.read(in);
+    }
+}
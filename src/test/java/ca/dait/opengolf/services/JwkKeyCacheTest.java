@@ -0,0 +1,100 @@
+package ca.dait.opengolf.services;
+
+import com.auth0.jwk.Jwk;
+import com.auth0.jwk.SigningKeyNotFoundException;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTCreator;
+import com.auth0.jwt.algorithms.Algorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class JwkKeyCacheTest {
+
+    private static final KeyPair KEYS = keyPair();
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void tokenWithoutAKeyIdIsNotFound() throws Exception{
+        JwkKeyCache cache = new JwkKeyCache(this.loader(jwk("key")), 0, 0);
+        try{
+            cache.get(null);
+            fail("Expected the key to be missing.");
+        }
+        catch(SigningKeyNotFoundException e){
+            //Expected
+        }
+        //Not worth a load, no key set has it.
+        assertEquals(0, this.loads.get());
+    }
+
+    @Test
+    public void keysWithoutAnIdAreSkipped() throws Exception{
+        JwkKeyCache cache = new JwkKeyCache(this.loader(jwk(null), jwk("key")), 0, 0);
+        cache.refresh();
+
+        assertNotNull(cache.get("key"));
+        assertEquals(1, this.loads.get());
+    }
+
+    @Test
+    public void tokenWithoutAKeyIdIsAnonymous(){
+        CredentialsService credentials = new CredentialsService(new JwkKeyCache(this.loader(jwk(null), jwk("key")), 0, 0),
+                                                                true, 60, 10, 60, new SimpleMeterRegistry());
+        Algorithm algorithm = Algorithm.RSA256((RSAPublicKey) KEYS.getPublic(), (RSAPrivateKey) KEYS.getPrivate());
+        Date expires = new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+
+        assertNull(credentials.verifyIdToken(token(null).withExpiresAt(expires).sign(algorithm)));
+        assertNotNull(credentials.verifyIdToken(token("key").withExpiresAt(expires).sign(algorithm)));
+    }
+
+    private static JWTCreator.Builder token(String keyId){
+        return JWT.create().withKeyId(keyId).withClaim("cognito:username", "user")
+                  .withArrayClaim("cognito:groups", new String[]{"contributor"});
+    }
+
+    private JwkKeyCache.KeySetLoader loader(Jwk... jwks){
+        List<Jwk> keySet = Arrays.asList(jwks);
+        return () -> {
+            this.loads.incrementAndGet();
+            return keySet;
+        };
+    }
+
+    private static Jwk jwk(String keyId){
+        RSAPublicKey key = (RSAPublicKey) KEYS.getPublic();
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("n", Base64.getUrlEncoder().withoutPadding().encodeToString(key.getModulus().toByteArray()));
+        attributes.put("e", Base64.getUrlEncoder().withoutPadding().encodeToString(key.getPublicExponent().toByteArray()));
+        return new Jwk(keyId, "RSA", "RS256", "sig", (List<String>) null, null, null, null, attributes);
+    }
+
+    private static KeyPair keyPair(){
+        try{
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        }
+        catch(Exception e){
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package ca.dait.opengolf.services;
+
+import ca.dait.opengolf.auth.AuthenticationTokens;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.cognitoidp.AbstractAWSCognitoIdentityProviderAsync;
+import com.amazonaws.services.cognitoidp.model.AdminInitiateAuthRequest;
+import com.amazonaws.services.cognitoidp.model.AdminInitiateAuthResult;
+import com.amazonaws.services.cognitoidp.model.AuthenticationResultType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LoginServiceTest {
+
+    private static final int THREADS = 2;
+    private static final int QUEUE_SIZE = 2;
+
+    private StubCognito cognito;
+
+    @After
+    public void tearDown(){
+        if(this.cognito != null){
+            this.cognito.shutdown();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void callsOverThePoolBoundFailFastWithoutOpeningTheBreaker() throws Exception{
+        CountDownLatch spike = new CountDownLatch(1);
+        this.cognito = new StubCognito(() -> {
+            await(spike);
+            return tokens();
+        });
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 60);
+        LoginService loginService = this.loginService(breaker);
+
+        List<CompletableFuture<AuthenticationTokens>> accepted = new ArrayList<>();
+        for(int i = 0; i < THREADS + QUEUE_SIZE; i++){
+            accepted.add(loginService.login("user", "password"));
+        }
+        //Every Cognito thread is held by the latency spike and the queue is full.
+        CompletableFuture<AuthenticationTokens> rejected = loginService.login("user", "password");
+        assertTrue(rejected.isDone());
+        assertUnavailable(rejected);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        spike.countDown();
+        for(CompletableFuture<AuthenticationTokens> login : accepted){
+            assertEquals("id", login.get(10, TimeUnit.SECONDS).id);
+        }
+        assertEquals(THREADS + QUEUE_SIZE, this.cognito.calls.get());
+    }
+
+    @Test(timeout = 30000)
+    public void slowFailuresOpenTheBreaker() throws Exception{
+        this.cognito = new StubCognito(() -> {
+            sleep(50);
+            throw new SdkClientException("Request timed out.");
+        });
+        CircuitBreaker breaker = new CircuitBreaker("test", 3, 60);
+        LoginService loginService = this.loginService(breaker);
+
+        for(int i = 0; i < 3; i++){
+            assertUnavailable(loginService.login("user", "password"));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        //Open, calls fail fast without reaching Cognito.
+        CompletableFuture<AuthenticationTokens> login = loginService.login("user", "password");
+        assertTrue(login.isDone());
+        assertUnavailable(login);
+        assertEquals(3, this.cognito.calls.get());
+    }
+
+    @Test(timeout = 30000)
+    public void trialCallThatFailsToStartReopensTheBreaker() throws Exception{
+        this.cognito = new StubCognito(() -> {
+            throw new SdkClientException("Unable to connect.");
+        });
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 0);
+        LoginService loginService = this.loginService(breaker);
+
+        assertUnavailable(loginService.login("user", "password"));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        //The trial call throws before it's handed to the Cognito executor.
+        this.cognito.shutdown();
+        assertUnavailable(loginService.login("user", "password"));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        this.cognito = new StubCognito(LoginServiceTest::tokens);
+        loginService = this.loginService(breaker);
+        assertEquals("id", loginService.login("user", "password").get(10, TimeUnit.SECONDS).id);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    private LoginService loginService(CircuitBreaker breaker){
+        return new LoginService("pool", "client", this.cognito, breaker, 10, 10, new SimpleMeterRegistry());
+    }
+
+    private static AdminInitiateAuthResult tokens(){
+        return new AdminInitiateAuthResult().withAuthenticationResult(new AuthenticationResultType().withIdToken("id")
+                                                                                                    .withRefreshToken("refresh"));
+    }
+
+    private static void assertUnavailable(CompletableFuture<?> future) throws Exception{
+        try{
+            future.get(10, TimeUnit.SECONDS);
+            fail("Expected the call to fail.");
+        }
+        catch(ExecutionException e){
+            assertTrue(e.getCause().toString(), e.getCause() instanceof ServiceUnavailableException);
+        }
+    }
+
+    private static void await(CountDownLatch latch){
+        try{
+            latch.await();
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis){
+        try{
+            Thread.sleep(millis);
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Cognito client answering adminInitiateAuth on the same bounded executor as the real client. Once shut down,
+     * calls throw before they're started.
+     */
+    private static class StubCognito extends AbstractAWSCognitoIdentityProviderAsync {
+
+        private final ThreadPoolExecutor executor = LoginService.newExecutor(THREADS, QUEUE_SIZE);
+        private final Supplier<AdminInitiateAuthResult> answer;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private StubCognito(Supplier<AdminInitiateAuthResult> answer){
+            this.answer = answer;
+        }
+
+        @Override
+        public Future<AdminInitiateAuthResult> adminInitiateAuthAsync(AdminInitiateAuthRequest request,
+                                                                      AsyncHandler<AdminInitiateAuthRequest, AdminInitiateAuthResult> handler){
+            if(this.executor.isShutdown()){
+                throw new IllegalStateException("Client is shut down.");
+            }
+            return this.executor.submit(() -> {
+                this.calls.incrementAndGet();
+                try{
+                    AdminInitiateAuthResult result = this.answer.get();
+                    handler.onSuccess(request, result);
+                    return result;
+                }
+                catch(Exception e){
+                    handler.onError(e);
+                    throw e;
+                }
+            });
+        }
+
+        @Override
+        public void shutdown(){
+            this.executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package ca.dait.opengolf.services;
+
+import org.elasticsearch.common.geo.GeoUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class SpatialGridTest {
+
+    @Test
+    public void nearestMatchesABruteForceScan(){
+        Random random = new Random(7);
+        SpatialGrid grid = new SpatialGrid(0.1);
+        Map<String, HoleGeometry> courses = new HashMap<>();
+        for(int i = 0; i < 500; i++){
+            //Clustered like real courses, with a few spread over the globe.
+            double lat = (i % 10 == 0) ? random.nextDouble() * 180 - 90 : 43 + random.nextDouble() * 2;
+            double lon = (i % 10 == 0) ? random.nextDouble() * 360 - 180 : -80 + random.nextDouble() * 2;
+            HoleGeometry holes = new HoleGeometry(new double[]{lat, lat + 0.001}, new double[]{lon, lon + 0.001});
+            courses.put("course-" + i, holes);
+            grid.add("course-" + i, holes);
+        }
+
+        for(int i = 0; i < 50; i++){
+            double lat = 43 + random.nextDouble() * 2;
+            double lon = -80 + random.nextDouble() * 2;
+            assertNearest(courses, grid, lat, lon);
+        }
+        assertNearest(courses, grid, -89.99, 0);
+        assertNearest(courses, grid, 89.99, 179.99);
+    }
+
+    @Test
+    public void nearestWrapsAroundTheAntimeridian(){
+        SpatialGrid grid = new SpatialGrid(0.1);
+        grid.add("east", new HoleGeometry(new double[]{-17.0}, new double[]{179.95}));
+        grid.add("west", new HoleGeometry(new double[]{-17.0}, new double[]{-179.9}));
+        grid.add("far", new HoleGeometry(new double[]{-17.0}, new double[]{179.0}));
+
+        //Just west of the antimeridian, the course across it is nearer than the one a degree away on this side.
+        Iterator<SpatialGrid.Neighbour> nearest = grid.nearest(-17.0, -179.99);
+        assertEquals("east", nearest.next().id);
+        assertEquals("west", nearest.next().id);
+        assertEquals("far", nearest.next().id);
+        assertFalse(nearest.hasNext());
+    }
+
+    @Test
+    public void nearestReachesCoursesBeyondTheFirstRings(){
+        SpatialGrid grid = new SpatialGrid(0.1);
+        for(int i = 0; i < 100; i++){
+            grid.add("near-" + i, new HoleGeometry(new double[]{10 + i * 0.1}, new double[]{10}));
+        }
+        grid.add("far", new HoleGeometry(new double[]{-60}, new double[]{-120}));
+
+        //Both in the first ring around the search cell, returned by distance whatever cell they're in.
+        grid.add("diagonal", new HoleGeometry(new double[]{0.15}, new double[]{0.15}));
+        grid.add("straight", new HoleGeometry(new double[]{0.05}, new double[]{0.19}));
+        Iterator<SpatialGrid.Neighbour> nearest = grid.nearest(0.05, 0.05);
+        assertEquals("straight", nearest.next().id);
+        assertEquals("diagonal", nearest.next().id);
+        String last = null;
+        while(nearest.hasNext()){
+            last = nearest.next().id;
+        }
+        assertEquals("far", last);
+    }
+
+    @Test
+    public void coursesWithoutHolesAreListedApartInIdOrder(){
+        SpatialGrid grid = new SpatialGrid(0.1);
+        grid.add("b", HoleGeometry.EMPTY);
+        grid.add("located", new HoleGeometry(new double[]{Double.NaN, 10}, new double[]{Double.NaN, 10}));
+        //Holes, none with a position.
+        grid.add("a", new HoleGeometry(new double[]{Double.NaN}, new double[]{Double.NaN}));
+        grid.add("c", HoleGeometry.EMPTY);
+        grid.remove("c");
+
+        Iterator<SpatialGrid.Neighbour> nearest = grid.nearest(-80, 170);
+        assertEquals("located", nearest.next().id);
+        assertFalse(nearest.hasNext());
+
+        Iterator<String> unlocated = grid.unlocated(null);
+        assertEquals("a", unlocated.next());
+        assertEquals("b", unlocated.next());
+        assertFalse(unlocated.hasNext());
+        unlocated = grid.unlocated("a");
+        assertEquals("b", unlocated.next());
+        assertFalse(unlocated.hasNext());
+    }
+
+    @Test
+    public void removedCoursesAreNotReturned(){
+        SpatialGrid grid = new SpatialGrid(0.1);
+        grid.add("kept", new HoleGeometry(new double[]{10, 10.5}, new double[]{10, 10.5}));
+        grid.add("removed", new HoleGeometry(new double[]{10, Double.NaN, 10.5}, new double[]{10, Double.NaN, 10.5}));
+        grid.remove("removed");
+
+        Iterator<SpatialGrid.Neighbour> nearest = grid.nearest(10, 10);
+        assertEquals("kept", nearest.next().id);
+        assertFalse(nearest.hasNext());
+    }
+
+    private static void assertNearest(Map<String, HoleGeometry> courses, SpatialGrid grid, double lat, double lon){
+        List<String> expected = new ArrayList<>(courses.keySet());
+        expected.sort(Comparator.<String>comparingDouble((id) -> courses.get(id).nearestDistance(lat, lon))
+                                .thenComparing(Comparator.naturalOrder()));
+
+        List<String> actual = new ArrayList<>();
+        Iterator<SpatialGrid.Neighbour> nearest = grid.nearest(lat, lon);
+        double previous = 0;
+        while(nearest.hasNext()){
+            SpatialGrid.Neighbour neighbour = nearest.next();
+            assertEquals(GeoUtils.arcDistance(lat, lon, courses.get(neighbour.id).lat(courses.get(neighbour.id).nearestHole(lat, lon)),
+                                              courses.get(neighbour.id).lon(courses.get(neighbour.id).nearestHole(lat, lon))),
+                         neighbour.distance, 1e-6);
+            assertFalse(neighbour.distance < previous);
+            previous = neighbour.distance;
+            actual.add(neighbour.id);
+        }
+        assertEquals(expected, actual);
+    }
+}
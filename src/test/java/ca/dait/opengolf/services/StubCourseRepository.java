@@ -0,0 +1,75 @@
+package ca.dait.opengolf.services;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Course repository failing every call, tests override the calls they expect. Writes have no lag and there are no
+ * connections.
+ */
+class StubCourseRepository implements CourseRepository {
+
+    @Override
+    public CompletableFuture<CourseHit> get(String id){
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CompletableFuture<Map<String, CourseHit>> getAll(Collection<String> ids){
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CompletableFuture<Page> search(String searchTerm, Double lat, Double lon, int size, Object[] searchAfter){
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CompletableFuture<Page> changes(Long since, long until, int size, Object[] searchAfter){
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long changesLag(){
+        return 0;
+    }
+
+    @Override
+    public CompletableFuture<Page> region(CourseRegion region, int size, Object[] searchAfter){
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String add(String source) throws IOException{
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void bulkIndex(Iterator<CourseDocument> documents, CourseBulkResult result) throws IOException{
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void update(String id, String source) throws IOException{
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void delete(String id, long modified) throws IOException{
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean createIndex(String mapping) throws IOException{
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Map<String, Integer> getConnectionStats(){
+        return Collections.emptyMap();
+    }
+}
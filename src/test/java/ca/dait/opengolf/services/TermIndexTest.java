@@ -0,0 +1,119 @@
+package ca.dait.opengolf.services;
+
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TermIndexTest {
+
+    private static final String[] FIELDS = new String[]{"facilityName", "city"};
+
+    @Test
+    public void editDistance(){
+        assertEquals(0, TermIndex.editDistance("glencairn", "glencairn", 2));
+        assertEquals(1, TermIndex.editDistance("glencairn", "glencarn", 2));
+        assertEquals(1, TermIndex.editDistance("glencairn", "glenncairn", 2));
+        assertEquals(1, TermIndex.editDistance("glencairn", "glencaimn", 2));
+        assertEquals(2, TermIndex.editDistance("glencairn", "glancaimn", 2));
+        assertEquals(0, TermIndex.editDistance("", "", 0));
+        assertEquals(2, TermIndex.editDistance("ab", "", 2));
+    }
+
+    @Test
+    public void transpositionIsOneEdit(){
+        assertEquals(1, TermIndex.editDistance("glencairn", "glecnairn", 2));
+        assertEquals(1, TermIndex.editDistance("ab", "ba", 1));
+    }
+
+    @Test
+    public void editDistanceStopsPastTheMaximum(){
+        assertEquals(2, TermIndex.editDistance("glencairn", "toronto", 1));
+        //Lengths alone rule it out.
+        assertEquals(3, TermIndex.editDistance("golf", "glencairn", 2));
+        assertEquals(1, TermIndex.editDistance("abc", "xyz", 0));
+    }
+
+    @Test
+    public void tokenizeSplitsOnAnythingButLettersAndDigits(){
+        assertEquals(Arrays.asList("st", "andrews", "old", "course", "1552"), TermIndex.tokenize("St. Andrews - Old Course (1552)"));
+        assertEquals(Arrays.asList("montréal"), TermIndex.tokenize("MONTRÉAL"));
+        assertTrue(TermIndex.tokenize(" ,.- ").isEmpty());
+    }
+
+    @Test
+    public void exactMatchesScoreAboveFuzzyMatches(){
+        TermIndex index = index();
+        Map<String, Float> scores = index.search("Glencairn");
+        assertEquals(2, scores.size());
+        assertTrue(scores.get("exact") > scores.get("fuzzy"));
+        assertFalse(scores.containsKey("other"));
+    }
+
+    @Test
+    public void shortTermsAreNotFuzzy(){
+        TermIndex index = new TermIndex(FIELDS);
+        index.add("ab", document("AB Golf", "Toronto"));
+        index.add("ac", document("AC Golf", "Toronto"));
+
+        Map<String, Float> scores = index.search("ab");
+        assertEquals(1, scores.size());
+        assertTrue(scores.containsKey("ab"));
+    }
+
+    @Test
+    public void aCourseScoresItsBestField(){
+        TermIndex index = new TermIndex(FIELDS);
+        index.add("both", document("Milton Golf", "Milton"));
+        index.add("name", document("Milton Golf", "Toronto"));
+        index.add("city", document("Other", "Milton"));
+
+        //Matched as often in either field, so equally scored in each: the best isn't the sum.
+        Map<String, Float> scores = index.search("milton");
+        assertEquals(scores.get("name"), scores.get("city"));
+        assertEquals(scores.get("name"), scores.get("both"));
+    }
+
+    @Test
+    public void termsOfAFieldAddUp(){
+        TermIndex index = index();
+        Map<String, Float> scores = index.search("glencairn golf");
+        assertTrue(scores.get("exact") > index.search("glencairn").get("exact"));
+    }
+
+    @Test
+    public void removedCoursesNoLongerMatch(){
+        TermIndex index = index();
+        index.remove("exact", document("Glencairn Golf Club", "Milton"));
+
+        Map<String, Float> scores = index.search("glencairn");
+        assertEquals(1, scores.size());
+        assertTrue(scores.containsKey("fuzzy"));
+    }
+
+    @Test
+    public void textWithoutTermsMatchesEverything(){
+        assertNull(index().search(" - "));
+    }
+
+    private static TermIndex index(){
+        TermIndex index = new TermIndex(FIELDS);
+        index.add("exact", document("Glencairn Golf Club", "Milton"));
+        index.add("fuzzy", document("Glencarin", "Halton Hills"));
+        index.add("other", document("Lionhead", "Brampton"));
+        return index;
+    }
+
+    private static JsonObject document(String facilityName, String city){
+        JsonObject document = new JsonObject();
+        document.addProperty("facilityName", facilityName);
+        document.addProperty("city", city);
+        return document;
+    }
+}